@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AVLTree insert, contains, remove and deleteMin over size keys drawn from
+ * a distribution. One operation is a round over all size keys, so divide
+ * the score by size for the time per key.
+ * remove and deleteMin empty a tree, so each gets a freshly filled tree
+ * before every round, outside the timing; their gc.alloc.rate.norm still
+ * counts the filling, so take their allocation from insert instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class AVLTreeBenchmark {
+    @Param({"1000", "32768", "1000000"})
+    public int size;
+
+    @Param({"sequential", "random", "zipfian"})
+    public String distribution;
+
+    Integer[] keys;
+    Integer[] probes;
+    Object full;
+
+    @Setup(Level.Trial)
+    public void makeKeys() throws Throwable {
+        keys = (Integer[]) Workloads.KEYS.invokeExact(distribution, size, (long) size);
+        probes = (Integer[]) Workloads.KEYS.invokeExact(distribution, size, (long) size + 1);
+        full = (Object) Workloads.FILLED_TREE.invokeExact(keys);
+    }
+
+    /**
+     * A tree filled with the keys, remade before every round.
+     */
+    @State(Scope.Thread)
+    public static class Filled {
+        Object tree;
+
+        @Setup(Level.Invocation)
+        public void fill(AVLTreeBenchmark benchmark) throws Throwable {
+            tree = (Object) Workloads.FILLED_TREE.invokeExact(benchmark.keys);
+        }
+    }
+
+    @Benchmark
+    public long insert() throws Throwable {
+        return (long) Workloads.INSERT.invokeExact(keys);
+    }
+
+    @Benchmark
+    public long contains() throws Throwable {
+        return (long) Workloads.CONTAINS.invokeExact(full, probes);
+    }
+
+    @Benchmark
+    public long remove(Filled filled) throws Throwable {
+        return (long) Workloads.REMOVE.invokeExact(filled.tree, keys);
+    }
+
+    @Benchmark
+    public long deleteMin(Filled filled) throws Throwable {
+        return (long) Workloads.DELETE_MIN.invokeExact(filled.tree, size);
+    }
+}
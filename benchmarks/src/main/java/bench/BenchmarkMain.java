@@ -0,0 +1,26 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler on, so every result comes
+ * with its allocation rate (gc.alloc.rate.norm is bytes per operation) and
+ * collection counts. Takes the usual JMH arguments; giving any -prof
+ * replaces the default one. For example, from the project directory:
+ * java -jar benchmarks/target/benchmarks.jar QueueBenchmark -f 1
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-prof")) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
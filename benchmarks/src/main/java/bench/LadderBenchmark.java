@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one ladder query, through LadderSolver.solve and through
+ * LadderGameSolution.findLadder. Each operation answers the next pair of
+ * the fixed query set from LadderGameSolution.main, going round it, so the
+ * sampled latencies cover every query. The dictionary path is relative to
+ * the directory JMH is started in.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class LadderBenchmark {
+    @Param({"src/dictionary.txt"})
+    public String dictionary;
+
+    @Param({"false", "true"})
+    public boolean aStar;
+
+    Object game;
+    Object solver;
+    int queries;
+    int next;
+
+    @Setup(Level.Trial)
+    public void load() throws Throwable {
+        game = (Object) Workloads.NEW_LADDER_GAME.invokeExact(dictionary);
+        solver = (Object) Workloads.NEW_LADDER_SOLVER.invokeExact(game);
+        queries = (int) Workloads.QUERY_COUNT.invokeExact();
+    }
+
+    private int nextQuery() {
+        int query = next;
+        next = query + 1 == queries ? 0 : query + 1;
+        return query;
+    }
+
+    @Benchmark
+    public long solve() throws Throwable {
+        return (long) Workloads.SOLVE.invokeExact(solver, nextQuery(), aStar);
+    }
+
+    @Benchmark
+    public long findLadder() throws Throwable {
+        return (long) Workloads.FIND_LADDER.invokeExact(game, nextQuery(), aStar);
+    }
+}
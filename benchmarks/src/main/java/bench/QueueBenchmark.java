@@ -0,0 +1,143 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The Queue implementations as search frontiers: the FIFO queues as a BFS
+ * frontier of BFS_STEPS removes, the priority queues as an A* frontier of
+ * A_STAR_STEPS removes. Every queue has its own benchmark method, and JMH
+ * forks a JVM for each, so no queue runs on call sites already compiled
+ * for another. One operation is a whole search; the queue is made once per
+ * trial and left empty by each search, as a solver reusing it would.
+ * The aStarBatched methods run the same A* frontier with each step's items
+ * added by one addAll, as findLadder adds the ladders of an expansion.
+ * spscPipeline passes Integers from a producer thread to a consumer thread
+ * through an SpscQueue; offers to a full queue and polls of an empty one
+ * are counted as operations too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class QueueBenchmark {
+    static final int BFS_STEPS = 1_000_000;
+    static final int A_STAR_STEPS = 200_000;
+
+    @State(Scope.Thread)
+    public static class Frontiers {
+        Object myLinkedList;
+        Object chunkedQueue;
+        Object spscQueue;
+        Object avlTree;
+        Object countedAvlTree;
+        Object indexedHeap;
+        Object bucketQueue;
+
+        @Setup(Level.Trial)
+        public void makeQueues() throws Throwable {
+            myLinkedList = (Object) Workloads.NEW_QUEUE.invokeExact("MyLinkedList");
+            chunkedQueue = (Object) Workloads.NEW_QUEUE.invokeExact("ChunkedQueue");
+            spscQueue = (Object) Workloads.NEW_QUEUE.invokeExact("SpscQueue");
+            avlTree = (Object) Workloads.NEW_QUEUE.invokeExact("AVLTree");
+            countedAvlTree = (Object) Workloads.NEW_QUEUE.invokeExact("counted AVLTree");
+            indexedHeap = (Object) Workloads.NEW_QUEUE.invokeExact("IndexedHeap");
+            bucketQueue = (Object) Workloads.NEW_QUEUE.invokeExact("BucketQueue");
+        }
+    }
+
+    @Benchmark
+    public long bfsMyLinkedList(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.BFS.invokeExact(frontiers.myLinkedList, BFS_STEPS);
+    }
+
+    @Benchmark
+    public long bfsChunkedQueue(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.BFS.invokeExact(frontiers.chunkedQueue, BFS_STEPS);
+    }
+
+    @Benchmark
+    public long bfsSpscQueue(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.BFS.invokeExact(frontiers.spscQueue, BFS_STEPS);
+    }
+
+    @Benchmark
+    public long aStarAVLTree(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR.invokeExact(frontiers.avlTree, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarCountedAVLTree(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR.invokeExact(frontiers.countedAvlTree, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarIndexedHeap(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR.invokeExact(frontiers.indexedHeap, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarBucketQueue(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR.invokeExact(frontiers.bucketQueue, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarBatchedAVLTree(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR_BATCHED.invokeExact(frontiers.avlTree, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarBatchedIndexedHeap(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR_BATCHED.invokeExact(frontiers.indexedHeap, A_STAR_STEPS);
+    }
+
+    @Benchmark
+    public long aStarBatchedBucketQueue(Frontiers frontiers) throws Throwable {
+        return (long) Workloads.A_STAR_BATCHED.invokeExact(frontiers.bucketQueue, A_STAR_STEPS);
+    }
+
+    /**
+     * The queue shared by the two threads of spscPipeline.
+     */
+    @State(Scope.Group)
+    public static class Pipe {
+        static final Integer ITEM = 1;
+        Object queue;
+
+        @Setup(Level.Trial)
+        public void makeQueue() throws Throwable {
+            queue = (Object) Workloads.NEW_QUEUE.invokeExact("SpscQueue");
+        }
+    }
+
+    @Benchmark
+    @Group("spscPipeline")
+    @GroupThreads(1)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean producer(Pipe pipe) throws Throwable {
+        return (boolean) Workloads.OFFER.invokeExact(pipe.queue, Pipe.ITEM);
+    }
+
+    @Benchmark
+    @Group("spscPipeline")
+    @GroupThreads(1)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void consumer(Pipe pipe, Blackhole blackhole) throws Throwable {
+        blackhole.consume((Object) Workloads.POLL.invokeExact(pipe.queue));
+    }
+}
@@ -0,0 +1,44 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Method handles to the workloads in Benchmarks. JMH only runs benchmarks
+ * in a named package, and a named package cannot name the classes of the
+ * unnamed one that holds the AVLTree sources, so the benchmarks reach them
+ * by reflection. The handles are static final, so the JIT inlines them and
+ * a call costs the same as a direct one.
+ */
+final class Workloads {
+    static final MethodHandle KEYS = find("keys", Integer[].class, String.class, int.class, long.class);
+    static final MethodHandle FILLED_TREE = find("filledTree", Object.class, Integer[].class);
+    static final MethodHandle INSERT = find("insert", long.class, Integer[].class);
+    static final MethodHandle CONTAINS = find("contains", long.class, Object.class, Integer[].class);
+    static final MethodHandle REMOVE = find("remove", long.class, Object.class, Integer[].class);
+    static final MethodHandle DELETE_MIN = find("deleteMin", long.class, Object.class, int.class);
+    static final MethodHandle NEW_QUEUE = find("newQueue", Object.class, String.class);
+    static final MethodHandle BFS = find("bfs", long.class, Object.class, int.class);
+    static final MethodHandle A_STAR = find("aStar", long.class, Object.class, int.class);
+    static final MethodHandle A_STAR_BATCHED = find("aStarBatched", long.class, Object.class, int.class);
+    static final MethodHandle OFFER = find("offer", boolean.class, Object.class, Integer.class);
+    static final MethodHandle POLL = find("poll", Object.class, Object.class);
+    static final MethodHandle QUERY_COUNT = find("queryCount", int.class);
+    static final MethodHandle NEW_LADDER_GAME = find("newLadderGame", Object.class, String.class);
+    static final MethodHandle NEW_LADDER_SOLVER = find("newLadderSolver", Object.class, Object.class);
+    static final MethodHandle SOLVE = find("solve", long.class, Object.class, int.class, boolean.class);
+    static final MethodHandle FIND_LADDER = find("findLadder", long.class, Object.class, int.class, boolean.class);
+
+    private Workloads() {
+    }
+
+    private static MethodHandle find(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("Benchmarks"), name,
+                    MethodType.methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
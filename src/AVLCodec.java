@@ -0,0 +1,52 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the items of an AVLTree for AVLTree.writeTo and AVLTree.readFrom.
+ * An item must be read back with exactly the bytes its write produced.
+ */
+public interface AVLCodec<T> {
+    void write(T item, DataOutput out) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    /** Four bytes per item. */
+    AVLCodec<Integer> INTEGER = new AVLCodec<Integer>() {
+        @Override
+        public void write(Integer item, DataOutput out) throws IOException {
+            out.writeInt(item);
+        }
+
+        @Override
+        public Integer read(DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /** Eight bytes per item. */
+    AVLCodec<Long> LONG = new AVLCodec<Long>() {
+        @Override
+        public void write(Long item, DataOutput out) throws IOException {
+            out.writeLong(item);
+        }
+
+        @Override
+        public Long read(DataInput in) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    /** Modified UTF-8 with a two byte length, so strings are limited to 65535 bytes. */
+    AVLCodec<String> STRING = new AVLCodec<String>() {
+        @Override
+        public void write(String item, DataOutput out) throws IOException {
+            out.writeUTF(item);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+}
@@ -1,31 +1,89 @@
 // AVLTree class
 //
-// CONSTRUCTION: with no initializer
+// CONSTRUCTION: with no initializer, or with a Comparator and whether to count duplicates
 //
 // ******************PUBLIC OPERATIONS*********************
 // void insert( x )       --> Insert x
-// void remove( x )       --> Remove x (unimplemented)
+// void remove( x )       --> Remove one item matching x, if there is one
 // boolean contains( x )  --> Return true if x is present
-// boolean remove( x )    --> Return true if x was present
+// boolean removeOne( x ) --> Remove one item matching x; return true if there was one
+// int removeAll( x )     --> Remove every item matching x; return how many
+// int count( x )         --> Return number of items matching x
 // Comparable findMin( )  --> Return smallest item
 // Comparable findMax( )  --> Return largest item
+// Comparable pollMin( )  --> Remove and return smallest item, or null
+// Comparable pollMax( )  --> Remove and return largest item, or null
+// Comparable remove( )   --> Same as pollMin, for Queue
+// Comparable peek( )     --> Return smallest item, or null
+// int drainTo( c, n )    --> Move the n smallest items into collection c
 // boolean isEmpty( )     --> Return true if empty; else false
 // void makeEmpty( )      --> Remove all items
+// void insertAll( c )    --> Insert every item of collection c
+// int size( )            --> Return number of items
+// Comparable select( k ) --> Return k-th smallest item, counting from 0
+// int rank( x )          --> Return number of items smaller than x
+// int countRange( lo, hi ) --> Return number of items in [lo, hi)
+// AVLTree buildFromSorted( list [, cmp, counted] ) --> Balanced tree of sorted items in O(n)
+// AVLTree join( l, x, r ) --> Tree of l, x and r, when l <= x <= r
+// AVLTree split( x )     --> Move the items from x up to a new tree
+// void union( t ), intersection( t ), difference( t ) --> Set algebra with tree t
 // void printTree( )      --> Print tree in sorted order
+// Iterator iterator( )   --> Visit items in sorted order
+// Iterator descendingIterator( ) --> Visit items largest first
+// Stream stream( )       --> Stream items in sorted order
+// Range headSet( hi ), tailSet( lo ), subSet( lo, hi ) --> Live view of items in a range
+// AVLTree snapshot( )    --> Read-only copy of the tree, in O(1)
+// void writeTo( ch, codec, preOrder ) --> Stream the tree to a channel
+// AVLTree readFrom( ch, codec [, cmp, counted] ) --> Load a streamed tree in O(n)
 // ******************ERRORS********************************
 // Throws UnderflowException as appropriate
+// Iterators throw ConcurrentModificationException if the tree changes under them
+// Changing a snapshot throws UnsupportedOperationException
+// readFrom throws IOException if the stream is out of order for the comparator given
+// Combining trees with different comparators throws IllegalArgumentException
 
 /**
  * Implements an AVL tree.
- * Note that all "matching" is based on the compareTo method.
+ * Note that all "matching" is based on the compareTo method, or on the
+ * comparator the tree was constructed with.
+ * Duplicates are kept as separate nodes, unless the tree is constructed to
+ * count them: then each distinct item has one node with a count, and the
+ * first item inserted stands for the ones matching it.
+ * Nodes are changed in place until a snapshot is taken. From then on the
+ * nodes the snapshot shares are copied before they are changed (path copying),
+ * so the snapshot never sees a later change and needs no locking to read.
  * @author Mark Allen Weiss
  */
-public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
+public class AVLTree<T extends Comparable<? super T>> implements Queue<T>, Iterable<T>
 {
     /**
      * Construct the tree.
      */
     public AVLTree() {
+        this(null);
+    }
+
+    /**
+     * Construct the tree, ordered by a comparator instead of compareTo.
+     * This is for orderings other than the natural one; IntAVLTree main
+     * measures no speedup from passing Integer::compare for Integer keys,
+     * even with the compareTo call site megamorphic. For speed on int keys
+     * use IntAVLTree.
+     * @param comparator the ordering, or null for compareTo.
+     */
+    public AVLTree(java.util.Comparator<? super T> comparator) {
+        this(comparator, false);
+    }
+
+    /**
+     * Construct the tree, choosing how duplicates are kept.
+     * @param comparator the ordering, or null for compareTo.
+     * @param counted true to keep one node per distinct item with a count,
+     * false to give every duplicate its own node.
+     */
+    public AVLTree(java.util.Comparator<? super T> comparator, boolean counted) {
+        this.comparator = comparator;
+        this.counted = counted;
         root = null;
     }
 
@@ -33,7 +91,20 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
      * @param item the item to insert.
      */
     public void insert(T item) {
-        root = insert(item, root);
+        checkWritable();
+        int depth = 0;
+        AvlNode<T> node = root;
+        while (node != null) {
+            int compareResult = compare(item, node.element);
+            if (compareResult == 0 && counted) {
+                record(depth, node, false).count++;
+                resize(depth + 1);
+                return;
+            }
+            node = record(depth++, node, compareResult < 0);
+            node = compareResult < 0 ? node.left : node.right;
+        }
+        retrace(depth, new AvlNode<>(item, null, null, epoch));
     }
 
     /**
@@ -41,33 +112,73 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
      * @param item the item to remove.
      */
     public void remove(T item) {
-        root = remove(item, root);
+        removeOne(item);
     }
 
-
     /**
-     * Internal method to remove from a subtree.
+     * Remove one item matching item; for a counted tree, lower its count.
      * @param item the item to remove.
-     * @param node the node that roots the subtree.
-     * @return the new root of the subtree.
+     * @return true if an item was removed.
      */
-    private AvlNode<T> remove(T item, AvlNode<T> node) {
-        if (node == null)
-            return node;   // Item not found; do nothing
-
-        int compareResult = item.compareTo(node.element);
+    public boolean removeOne(T item) {
+        checkWritable();
+        int depth = 0;
+        AvlNode<T> node = root;
+        while (node != null) {
+            int compareResult = compare(item, node.element);
+            if (compareResult == 0)
+                break;
+            node = record(depth++, node, compareResult < 0);
+            node = compareResult < 0 ? node.left : node.right;
+        }
+        if (node == null) {
+            java.util.Arrays.fill(path, 0, depth, null);
+            return false;   // Item not found; do nothing
+        }
+        if (node.count > 1) {
+            record(depth, node, false).count--;
+            resize(depth + 1);
+            return true;
+        }
 
-        if (compareResult < 0)
-            node.left = remove(item, node.left);
-        else if (compareResult > 0)
-            node.right = remove(item, node.right);
-        else if (node.left != null && node.right != null) // Two children
+        if (node.left != null && node.right != null) // Two children
         {
-            node.element = findMin(node.right).element;
-            node.right = remove(node.element, node.right);
-        } else
-            node = (node.left != null) ? node.left : node.right;
-        return balance(node);
+            // Move the successor's element here, then unlink the successor
+            node = record(depth++, node, false);
+            AvlNode<T> successor = node.right;
+            while (successor.left != null) {
+                successor = record(depth++, successor, true);
+                successor = successor.left;
+            }
+            node.element = successor.element;
+            node.count = successor.count;
+            node = successor;
+        }
+        retrace(depth, (node.left != null) ? node.left : node.right);
+        return true;
+    }
+
+    /**
+     * Remove every item matching item, in O(log n).
+     * @param item the item to remove.
+     * @return the number of items removed.
+     */
+    public int removeAll(T item) {
+        checkWritable();
+        Split<T> less = split(root, item, false);
+        Split<T> equal = split(less.rest, item, true);
+        root = concat(less.less, equal.rest);
+        modCount++;
+        return size(equal.less);
+    }
+
+    /**
+     * Count the items matching an item, in O(log n).
+     * @param item the item to count.
+     * @return the number of matching items in the tree.
+     */
+    public int count(T item) {
+        return rank(item, true) - rank(item, false);
     }
 
     /**
@@ -81,7 +192,7 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
     }
 
     public void deleteMin() {
-        root = deleteMin(root);
+        pollMin();
     }
 
     /**
@@ -103,18 +214,486 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
         return contains(item, root);
     }
 
+    /**
+     * @return the number of items in the tree.
+     */
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Find the k-th smallest item in the tree, in O(log n).
+     * @param k position of the item in sorted order, counting from 0.
+     * @return the k-th smallest item.
+     * @throws IndexOutOfBoundsException if k is not below size().
+     */
+    public T select(int k) {
+        if (k < 0 || k >= size())
+            throw new IndexOutOfBoundsException("k " + k + ", size " + size());
+        AvlNode<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (k < leftSize)
+                node = node.left;
+            else if (k >= leftSize + node.count) {
+                k -= leftSize + node.count;
+                node = node.right;
+            } else
+                return node.element;
+        }
+    }
+
+    /**
+     * Count the items smaller than an item, in O(log n).
+     * @param item the item to compare against; it need not be in the tree.
+     * @return the number of items smaller than item.
+     */
+    public int rank(T item) {
+        return rank(item, false);
+    }
+
+    /**
+     * Count the items in a range, in O(log n).
+     * @param lo smallest item counted.
+     * @param hi items from hi up are not counted.
+     * @return the number of items x with lo <= x < hi.
+     */
+    public int countRange(T lo, T hi) {
+        return Math.max(0, rank(hi) - rank(lo));
+    }
+
     /**
      * Make the tree logically empty.
      */
     public void makeEmpty() {
+        checkWritable();
         root = null;
+        modCount++;
+    }
+
+    /**
+     * Take a read-only copy of the tree in O(1). The copy shares all its nodes
+     * with this tree; later changes to this tree copy the nodes they touch
+     * instead of changing them. Readers on other threads may traverse the
+     * snapshot without locking once it is safely published to them.
+     * @return the snapshot.
+     */
+    public AVLTree<T> snapshot() {
+        AVLTree<T> snapshot = new AVLTree<T>(comparator, counted);
+        snapshot.root = root;
+        snapshot.epoch = epoch;
+        snapshot.readOnly = true;
+        epoch = new Object();   // Every existing node is now shared
+        return snapshot;
+    }
+
+    /**
+     * @return true if this tree is a snapshot and cannot be changed.
+     */
+    public boolean isSnapshot() {
+        return readOnly;
+    }
+
+    /**
+     * Iterate over the items in sorted order.
+     */
+    @Override
+    public java.util.Iterator<T> iterator() {
+        return new TreeIterator(0, size(), false);
+    }
+
+    /**
+     * Iterate over the items, largest first.
+     */
+    public java.util.Iterator<T> descendingIterator() {
+        return new TreeIterator(0, size(), true);
+    }
+
+    @Override
+    public java.util.Spliterator<T> spliterator() {
+        return new TreeSpliterator(0, size());
+    }
+
+    /**
+     * Stream the items in sorted order without copying them.
+     */
+    public java.util.stream.Stream<T> stream() {
+        return java.util.stream.StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @param hi items from hi up are left out.
+     * @return a live view of the items smaller than hi.
+     */
+    public Range headSet(T hi) {
+        return new Range(null, hi);
+    }
+
+    /**
+     * @param lo smallest item included.
+     * @return a live view of the items no smaller than lo.
+     */
+    public Range tailSet(T lo) {
+        return new Range(lo, null);
+    }
+
+    /**
+     * @param lo smallest item included.
+     * @param hi items from hi up are left out.
+     * @return a live view of the items x with lo <= x < hi.
+     */
+    public Range subSet(T lo, T hi) {
+        return new Range(lo, hi);
+    }
+
+    /**
+     * Build a perfectly balanced tree from items in sorted order, in O(n).
+     * @param sorted the items, smallest first by compareTo. Duplicates are allowed.
+     * @return the tree holding the items.
+     * @throws IllegalArgumentException if the items are out of order.
+     */
+    public static <T extends Comparable<? super T>> AVLTree<T> buildFromSorted(java.util.List<? extends T> sorted) {
+        return buildFromSorted(sorted, null, false);
+    }
+
+    /**
+     * Build a perfectly balanced tree from items in sorted order, in O(n).
+     * @param sorted the items, smallest first by comparator. Duplicates are allowed.
+     * @param comparator the ordering of the tree, or null for compareTo.
+     * @param counted true for a tree that counts duplicates; each run of
+     * matching items becomes one node.
+     * @return the tree holding the items.
+     * @throws IllegalArgumentException if the items are out of order for comparator.
+     */
+    public static <T extends Comparable<? super T>> AVLTree<T> buildFromSorted(java.util.List<? extends T> sorted,
+                                                                              java.util.Comparator<? super T> comparator,
+                                                                              boolean counted) {
+        AVLTree<T> tree = new AVLTree<T>(comparator, counted);
+        try {
+            if (counted) {
+                // Keep the first of each run of matching items, with the run length
+                java.util.List<T> distinct = new java.util.ArrayList<>();
+                int[] counts = new int[sorted.size()];
+                for (T item : sorted)
+                    if (!distinct.isEmpty() && tree.compare(item, distinct.get(distinct.size() - 1)) == 0)
+                        counts[distinct.size() - 1]++;
+                    else {
+                        counts[distinct.size()] = 1;
+                        distinct.add(item);
+                    }
+                tree.root = tree.build(distinct.iterator(), distinct.size());
+                tree.setCounts(tree.root, counts, 0);
+            } else
+                tree.root = tree.build(sorted.iterator(), sorted.size());
+        } finally {
+            tree.last = null;
+        }
+        tree.recordHeight();
+        return tree;
+    }
+
+    /**
+     * Stream the tree to a channel in a compact binary format: a header, then
+     * the items written by codec, either in sorted order or in pre-order.
+     * Sorted order adds nothing per item, and is read back into a perfectly
+     * balanced tree. Pre-order adds one byte per item, holding the node's
+     * height and which children it has, and is read back into exactly this tree.
+     * Only a small buffer is used, and the channel is left open.
+     * A counted tree writes each item as many times as it holds it, and
+     * cannot be written in pre-order.
+     * @param channel where to write the tree.
+     * @param codec writes one item.
+     * @param preOrder true to keep the shape of the tree, false for sorted order.
+     */
+    public void writeTo(java.nio.channels.WritableByteChannel channel, AVLCodec<? super T> codec,
+                        boolean preOrder) throws java.io.IOException {
+        if (preOrder && counted)
+            throw new IllegalArgumentException("A counted tree cannot be written in pre-order");
+        java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(java.nio.channels.Channels.newOutputStream(channel), STREAM_BUFFER));
+        out.writeInt(STREAM_MAGIC);
+        out.writeByte(preOrder ? PRE_ORDER : SORTED_ORDER);
+        out.writeInt(size());
+        if (preOrder) {
+            AvlNode<T>[] stack = newStack();
+            int top = 0;
+            if (root != null)
+                stack[top++] = root;
+            while (top > 0) {
+                AvlNode<T> node = stack[--top];
+                out.writeByte((node.left != null ? HAS_LEFT : 0) | (node.right != null ? HAS_RIGHT : 0) | node.height);
+                codec.write(node.element, out);
+                if (node.right != null)
+                    stack[top++] = node.right;
+                if (node.left != null)
+                    stack[top++] = node.left;
+            }
+        } else {
+            for (T item : this)
+                codec.write(item, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Load a tree streamed by writeTo, in O(n) and with no rebalancing.
+     * The channel is read ahead through a buffer, so it should hold nothing
+     * after the tree that the caller still needs.
+     * @param channel where to read the tree.
+     * @param codec reads one item; must match the codec it was written with.
+     * @return the tree, ordered by compareTo.
+     * @throws java.io.IOException if the channel fails or does not hold a
+     * tree ordered by compareTo.
+     */
+    public static <T extends Comparable<? super T>> AVLTree<T> readFrom(java.nio.channels.ReadableByteChannel channel,
+                                                                       AVLCodec<? extends T> codec) throws java.io.IOException {
+        return readFrom(channel, codec, null, false);
+    }
+
+    /**
+     * Load a tree streamed by writeTo, in O(n) and with no rebalancing.
+     * The stream does not record the ordering or counting of the tree that
+     * wrote it, so the caller gives them, and the items are checked against
+     * them as they are read. A counted tree is read from a sorted stream,
+     * which is held in memory while runs of matching items are counted.
+     * @param channel where to read the tree.
+     * @param codec reads one item; must match the codec it was written with.
+     * @param comparator the ordering the tree was written with, or null for compareTo.
+     * @param counted true to count duplicates in the tree read.
+     * @return the tree.
+     * @throws java.io.IOException if the channel fails, does not hold a tree,
+     * or holds items out of order for comparator.
+     */
+    public static <T extends Comparable<? super T>> AVLTree<T> readFrom(java.nio.channels.ReadableByteChannel channel,
+                                                                       AVLCodec<? extends T> codec,
+                                                                       java.util.Comparator<? super T> comparator,
+                                                                       boolean counted) throws java.io.IOException {
+        java.io.DataInputStream in = new java.io.DataInputStream(
+                new java.io.BufferedInputStream(java.nio.channels.Channels.newInputStream(channel), STREAM_BUFFER));
+        if (in.readInt() != STREAM_MAGIC)
+            throw new java.io.IOException("Not an AVLTree stream");
+        int order = in.readByte();
+        int n = in.readInt();
+        AVLTree<T> tree = new AVLTree<T>(comparator, counted);
+        if (order == PRE_ORDER) {
+            if (n > 0)
+                tree.root = tree.readNode(in, codec);
+            if (tree.size() != n)
+                throw new java.io.IOException("Stream holds " + tree.size() + " items, header says " + n);
+            tree.checkSorted();
+        } else if (order == SORTED_ORDER) {
+            try {
+                if (counted) {
+                    java.util.List<T> items = new java.util.ArrayList<>(n);
+                    for (int i = 0; i < n; i++)
+                        items.add(codec.read(in));
+                    tree = buildFromSorted(items, comparator, true);
+                } else {
+                    java.util.Iterator<T> items = new java.util.Iterator<T>() {
+                        public boolean hasNext() {
+                            return true;
+                        }
+
+                        public T next() {
+                            try {
+                                return codec.read(in);
+                            } catch (java.io.IOException e) {
+                                throw new java.io.UncheckedIOException(e);
+                            }
+                        }
+                    };
+                    try {
+                        tree.root = tree.build(items, n);
+                        tree.recordHeight();
+                    } finally {
+                        tree.last = null;
+                    }
+                }
+            } catch (java.io.UncheckedIOException e) {
+                throw e.getCause();
+            } catch (IllegalArgumentException e) {
+                throw new java.io.IOException("Stream does not match the ordering given: " + e.getMessage(), e);
+            }
+        } else
+            throw new java.io.IOException("Unknown order " + order);
+        return tree;
+    }
+
+    /**
+     * Insert every item of a collection. A large collection is sorted, built
+     * into a balanced tree and merged with this one by a join-based union,
+     * rather than inserted one at a time; a collection small next to the tree
+     * is cheaper to insert item by item.
+     * @param items the items to insert.
+     */
+    @SuppressWarnings("unchecked")
+    public void insertAll(java.util.Collection<? extends T> items) {
+        checkWritable();
+        if (items.size() < BULK_MINIMUM || items.size() < size() / BULK_FRACTION) {
+            for (T item : items)
+                insert(item);
+            return;
+        }
+        T[] sorted = (T[]) items.toArray(new Comparable<?>[0]);
+        java.util.Arrays.sort(sorted, comparator);
+        int n = sorted.length;
+        int[] counts = null;
+        if (counted) {
+            // Keep the first of each run of matching items, with the run length
+            counts = new int[n];
+            n = 0;
+            for (int i = 0; i < sorted.length; i++)
+                if (n > 0 && compare(sorted[i], sorted[n - 1]) == 0)
+                    counts[n - 1]++;
+                else {
+                    sorted[n] = sorted[i];
+                    counts[n++] = 1;
+                }
+        }
+        AvlNode<T> added = build(java.util.Arrays.asList(sorted).subList(0, n).iterator(), n);
+        last = null;
+        if (counted)
+            setCounts(added, counts, 0);
+        root = setOperation(SetOperation.UNION, root, added);
+        recordHeight();
+        modCount++;
+    }
+
+    /**
+     * Join two trees with an item between them, in O(log n). Every item of
+     * left must be no larger than key, and every item of right no smaller;
+     * for counted trees, strictly smaller and larger.
+     * The new tree shares its nodes with left and right, which are unchanged.
+     * @return a tree of the items of left, key and the items of right.
+     */
+    public static <T extends Comparable<? super T>> AVLTree<T> join(AVLTree<T> left, T key, AVLTree<T> right) {
+        left.checkOrder(right);
+        int least = left.counted ? 1 : 0;   // A counted tree cannot hold key twice
+        if (!left.isEmpty() && left.compare(left.findMax(), key) > -least
+                || !right.isEmpty() && left.compare(right.findMin(), key) < least)
+            throw new IllegalArgumentException("Trees are not ordered around " + key);
+        AVLTree<T> tree = new AVLTree<T>(left.comparator, left.counted);
+        tree.share(left);
+        tree.share(right);
+        tree.root = tree.join(left.root, new AvlNode<>(key, null, null, tree.epoch), right.root);
+        tree.recordHeight();
+        return tree;
+    }
+
+    /**
+     * Split the tree at a key, in O(log n). This tree keeps the items
+     * smaller than key.
+     * @return a new tree of the items no smaller than key.
+     */
+    public AVLTree<T> split(T key) {
+        checkWritable();
+        Split<T> split = split(root, key, false);
+        root = split.less;
+        modCount++;
+        AVLTree<T> rest = new AVLTree<T>(comparator, counted);
+        rest.root = split.rest;
+        // Both trees hold nodes of the old epoch; if either kept it, it could
+        // take the other's nodes for its own after a union of the two
+        epoch = new Object();
+        return rest;
+    }
+
+    /**
+     * Add every item of another tree to this one, keeping duplicates.
+     * Costs O(m log(n/m + 1)) for trees of m and n items, m <= n, and runs
+     * in parallel for large trees. The other tree is unchanged; the two
+     * share nodes afterwards.
+     * @param other the tree to add.
+     */
+    public void union(AVLTree<T> other) {
+        checkWritable();
+        checkOrder(other);
+        if (other == this)
+            other = snapshot();
+        share(other);
+        root = setOperation(SetOperation.UNION, root, other.root);
+        recordHeight();
+        modCount++;
+    }
+
+    /**
+     * Keep only the items that match an item of another tree. Duplicates
+     * in this tree are kept, or not, together. The other tree is unchanged.
+     * @param other the tree to match against.
+     */
+    public void intersection(AVLTree<T> other) {
+        checkWritable();
+        checkOrder(other);
+        if (other == this)
+            other = snapshot();
+        root = setOperation(SetOperation.INTERSECTION, root, other.root);
+        modCount++;
+    }
+
+    /**
+     * Remove every item that matches an item of another tree.
+     * The other tree is unchanged.
+     * @param other the tree of items to remove.
+     */
+    public void difference(AVLTree<T> other) {
+        checkWritable();
+        checkOrder(other);
+        if (other == this)
+            other = snapshot();
+        root = setOperation(SetOperation.DIFFERENCE, root, other.root);
+        modCount++;
+    }
+
+    /**
+     * Remove the smallest item from the tree in a single descent.
+     * @return the smallest item, or null if empty.
+     */
+    public T pollMin() {
+        checkWritable();
+        if (isEmpty())
+            return null;
+        int depth = 0;
+        AvlNode<T> node = root;
+        while (node.left != null) {
+            node = record(depth++, node, true);
+            node = node.left;
+        }
+        if (node.count > 1) {
+            record(depth, node, true).count--;
+            resize(depth + 1);
+            return node.element;
+        }
+        retrace(depth, node.right);
+        return node.element;
+    }
+
+    /**
+     * Remove the largest item from the tree in a single descent.
+     * @return the largest item, or null if empty.
+     */
+    public T pollMax() {
+        checkWritable();
+        if (isEmpty())
+            return null;
+        int depth = 0;
+        AvlNode<T> node = root;
+        while (node.right != null) {
+            node = record(depth++, node, false);
+            node = node.right;
+        }
+        if (node.count > 1) {
+            record(depth, node, false).count--;
+            resize(depth + 1);
+            return node.element;
+        }
+        retrace(depth, node.left);
+        return node.element;
     }
 
     @Override
     public T remove() {
-        T min = findMin();
-        deleteMin();
-        return min;
+        return pollMin();
     }
 
     @Override
@@ -122,6 +701,40 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
         insert(data);
     }
 
+    /**
+     * @return the smallest item, left in the tree, or null if empty.
+     */
+    @Override
+    public T peek() {
+        return isEmpty() ? null : findMin(root).element;
+    }
+
+    /**
+     * Insert every item of a collection with insertAll's join-based union.
+     */
+    @Override
+    public void addAll(java.util.Collection<? extends T> items) {
+        insertAll(items);
+    }
+
+    /**
+     * Remove the n smallest items into a collection. They are copied out in
+     * order and then cut off with a single split by position, in O(n + log n).
+     */
+    @Override
+    public int drainTo(java.util.Collection<? super T> sink, int n) {
+        checkWritable();
+        n = Math.max(0, Math.min(n, size()));
+        java.util.Iterator<T> items = iterator();
+        for (int i = 0; i < n; i++)
+            sink.add(items.next());
+        if (n > 0) {
+            root = splitAt(root, n).rest;
+            modCount++;
+        }
+        return n;
+    }
+
     /**
      * Test if the tree is logically empty.
      * @return true if empty, false otherwise.
@@ -143,27 +756,59 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
     }
 
     private static final int ALLOWED_IMBALANCE = 1;
+    private static final int PARALLEL_THRESHOLD = 1 << 13;   // Smaller set operations stay on one thread
+    private static final int BULK_MINIMUM = 64;    // insertAll builds and merges collections of at least
+    private static final int BULK_FRACTION = 4;    // this many items and a quarter of the tree's size
+
+    // Stream format used by writeTo and readFrom
+    private static final int STREAM_MAGIC = 0x41564c31;   // "AVL1"
+    private static final int SORTED_ORDER = 0;
+    private static final int PRE_ORDER = 1;
+    private static final int HAS_LEFT = 0x80;      // Pre-order node byte: has a left child,
+    private static final int HAS_RIGHT = 0x40;     // has a right child,
+    private static final int HEIGHT_BITS = 0x3f;   // and its height
+    private static final int STREAM_BUFFER = 1 << 16;
 
     // Assume node is either balanced or within one of being balanced
     private AvlNode<T> balance(AvlNode<T> node) {
         if (node == null)
             return node;
+        node = own(node);
 
         if (height(node.left) - height(node.right) > ALLOWED_IMBALANCE)
-            if (height(node.left.left) >= height(node.left.right))
+            if (height(node.left.left) >= height(node.left.right)) {
+                if (AVLTreeMetrics.ENABLED)
+                    AVLTreeMetrics.INSTANCE.rightRotations.increment();
                 node = rightRotation(node);
-            else
+            } else {
+                if (AVLTreeMetrics.ENABLED)
+                    AVLTreeMetrics.INSTANCE.doubleRightRotations.increment();
                 node = doubleRightRotation(node);
+            }
         else if (height(node.right) - height(node.left) > ALLOWED_IMBALANCE)
-            if (height(node.right.right) >= height(node.right.left))
+            if (height(node.right.right) >= height(node.right.left)) {
+                if (AVLTreeMetrics.ENABLED)
+                    AVLTreeMetrics.INSTANCE.leftRotations.increment();
                 node = leftRotation(node);
-            else
+            } else {
+                if (AVLTreeMetrics.ENABLED)
+                    AVLTreeMetrics.INSTANCE.doubleLeftRotations.increment();
                 node = doubleLeftRotation(node);
+            }
 
-        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        update(node);
         return node;
     }
 
+    /**
+     * Internal method to give the height of the root to AVLTreeMetrics,
+     * after a change that may have made the tree taller.
+     */
+    private void recordHeight() {
+        if (AVLTreeMetrics.ENABLED && root != null)
+            AVLTreeMetrics.INSTANCE.maxHeight.accumulate(root.height);
+    }
+
     public void checkBalance() {
         checkBalance(root);
     }
@@ -176,7 +821,9 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
             int hl = checkBalance(node.left);
             int hr = checkBalance(node.right);
             if (Math.abs(height(node.left) - height(node.right)) > 1 ||
-                    height(node.left) != hl || height(node.right) != hr)
+                    height(node.left) != hl || height(node.right) != hr ||
+                    node.count < 1 || !counted && node.count != 1 ||
+                    node.size != size(node.left) + size(node.right) + node.count)
                 System.out.println("\n\n***********************OOPS!!");
         }
 
@@ -185,23 +832,112 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
 
 
     /**
-     * Internal method to insert into a subtree.  Duplicates are allowed
-     * @param item the item to insert.
-     * @param node the node that roots the subtree.
-     * @return the new root of the subtree.
+     * Internal method to remember a node on the way down from the root.
+     * A node shared with a snapshot is replaced by a copy, linked in
+     * below the previous node on the path.
+     * Duplicates are allowed; inserts send them to the right.
+     * @param depth depth of the node.
+     * @param node the node passed through.
+     * @param left true if the walk continues into the left subtree.
+     * @return the node, or its copy, that may be changed.
      */
-    private AvlNode<T> insert(T item, AvlNode<T> node) {
-        if (node == null)
-            return new AvlNode<>(item, null, null);
+    private AvlNode<T> record(int depth, AvlNode<T> node, boolean left) {
+        if (depth == path.length) {
+            path = java.util.Arrays.copyOf(path, depth * 2);
+            wentLeft = java.util.Arrays.copyOf(wentLeft, depth * 2);
+        }
+        if (node.epoch != epoch) {
+            node = own(node);
+            if (depth == 0)
+                root = node;
+            else if (wentLeft[depth - 1])
+                path[depth - 1].left = node;
+            else
+                path[depth - 1].right = node;
+        }
+        path[depth] = node;
+        wentLeft[depth] = left;
+        return node;
+    }
 
-        int compareResult = item.compareTo(node.element);
+    /**
+     * Internal method to get a node this tree may change.
+     * @return node itself, or a copy of it if a snapshot shares it.
+     */
+    private AvlNode<T> own(AvlNode<T> node) {
+        if (node.epoch == epoch)
+            return node;
+        return new AvlNode<>(node, epoch);
+    }
 
-        if (compareResult < 0)
-            node.left = insert(item, node.left);
-        else
-            node.right = insert(item, node.right);
+    /**
+     * Internal method to let this tree take in nodes of another one. The
+     * other tree moves to a new epoch, so it copies its nodes before changing
+     * them. This tree keeps its epoch: no two writable trees hold the same
+     * one, so the nodes it takes in are copied before they are changed, while
+     * the nodes only this tree holds are still changed in place.
+     */
+    private void share(AVLTree<T> other) {
+        if (!other.readOnly)
+            other.epoch = new Object();
+    }
 
-        return balance(node);
+    private int compare(T a, T b) {
+        return comparator == null ? a.compareTo(b) : comparator.compare(a, b);
+    }
+
+    private void checkOrder(AVLTree<T> other) {
+        if (!java.util.Objects.equals(comparator, other.comparator) || counted != other.counted)
+            throw new IllegalArgumentException("Trees are ordered or count duplicates differently");
+    }
+
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("A snapshot cannot be changed");
+    }
+
+    /**
+     * Internal method to recompute the sizes on the recorded path after a
+     * count changed, when no height can have changed.
+     * @param depth number of nodes recorded on the path.
+     */
+    private void resize(int depth) {
+        modCount++;
+        while (depth > 0) {
+            update(path[--depth]);
+            path[depth] = null;
+        }
+    }
+
+    /**
+     * Internal method to hang a changed subtree below the recorded path and
+     * rebalance upward. Stops as soon as a node keeps its height without
+     * rotating, since nothing above it can have changed.
+     * @param depth number of nodes recorded on the path.
+     * @param subtree the new subtree below the deepest recorded node.
+     */
+    private void retrace(int depth, AvlNode<T> subtree) {
+        modCount++;
+        while (depth > 0) {
+            AvlNode<T> parent = path[--depth];
+            path[depth] = null;
+            if (wentLeft[depth])
+                parent.left = subtree;
+            else
+                parent.right = subtree;
+            int oldHeight = parent.height;
+            subtree = balance(parent);
+            if (subtree == parent && parent.height == oldHeight) {
+                // Heights above are settled; only the sizes still change
+                while (depth > 0) {
+                    update(path[--depth]);
+                    path[depth] = null;
+                }
+                return;
+            }
+        }
+        root = subtree;
+        recordHeight();
     }
 
     /**
@@ -218,13 +954,6 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
         return node;
     }
 
-    private AvlNode<T> deleteMin(AvlNode<T> node) {
-        if (node.left == null)
-            return node.right;
-        node.left = deleteMin(node.left);
-        return balance(node);
-    }
-
     /**
      * Internal method to find the largest item in a subtree.
      * @param node the node that roots the tree.
@@ -247,7 +976,7 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
      */
     private boolean contains(T item, AvlNode<T> node) {
         while (node != null) {
-            int compareResult = item.compareTo(node.element);
+            int compareResult = compare(item, node.element);
 
             if (compareResult < 0)
                 node = node.left;
@@ -267,11 +996,45 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
     private void printTree(AvlNode<T> node, String indent) {
         if (node != null) {
             printTree(node.right, indent + "   ");
-            System.out.println(indent + node.element + "(" + node.height + ")");
+            System.out.println(indent + node.element + (node.count > 1 ? " x" + node.count : "") + "(" + node.height + ")");
             printTree(node.left, indent + "   ");
         }
     }
 
+    /**
+     * Internal method to count the items smaller than an item.
+     * @param inclusive true to count the items matching it too.
+     */
+    private int rank(T item, boolean inclusive) {
+        int rank = 0;
+        AvlNode<T> node = root;
+        while (node != null) {
+            int compareResult = compare(node.element, item);
+            if (compareResult < 0 || compareResult == 0 && inclusive) {
+                rank += size(node.left) + node.count;
+                node = node.right;
+            } else
+                node = node.left;
+        }
+        return rank;
+    }
+
+    /**
+     * Return the number of items in the subtree rooted at node, or 0, if null.
+     */
+    private int size(AvlNode<T> node) {
+        if (node == null) return 0;
+        return node.size;
+    }
+
+    /**
+     * Recompute the height and size of node from its children.
+     */
+    private void update(AvlNode<T> node) {
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + node.count;
+    }
+
     /**
      * Return the height of node node, or -1, if null.
      */
@@ -286,11 +1049,12 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
      * Update heights, then return new root.
      */
     private AvlNode<T> rightRotation(AvlNode<T> node) {
-        AvlNode<T> theLeft = node.left;
+        node = own(node);
+        AvlNode<T> theLeft = own(node.left);
         node.left = theLeft.right;
         theLeft.right = node;
-        node.height = Math.max(height(node.left), height(node.right)) + 1;
-        theLeft.height = Math.max(height(theLeft.left), node.height) + 1;
+        update(node);
+        update(theLeft);
         return theLeft;
     }
 
@@ -300,11 +1064,12 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
      * Update heights, then return new root.
      */
     private AvlNode<T> leftRotation(AvlNode<T> node) {
-        AvlNode<T> theRight = node.right;
+        node = own(node);
+        AvlNode<T> theRight = own(node.right);
         node.right = theRight.left;
         theRight.left = node;
-        node.height = Math.max(height(node.left), height(node.right)) + 1;
-        theRight.height = Math.max(height(theRight.right), node.height) + 1;
+        update(node);
+        update(theRight);
         return theRight;
     }
 
@@ -331,28 +1096,545 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
         return leftRotation(node);
     }
 
-    private static class AvlNode<T> {
-        // Constructors
-        AvlNode(T theElement) {
-            this(theElement, null, null);
+    /**
+     * Internal method to build a perfectly balanced subtree from sorted items.
+     * @param items iterator over the items, smallest first.
+     * @param n number of items to take from the iterator.
+     * @return the root of the subtree.
+     */
+    private AvlNode<T> build(java.util.Iterator<? extends T> items, int n) {
+        if (n == 0)
+            return null;
+        int leftSize = (n - 1) / 2;
+        AvlNode<T> left = build(items, leftSize);
+        T element = items.next();
+        if (last != null && compare(element, last) < 0)
+            throw new IllegalArgumentException("Items are not sorted: " + element + " after " + last);
+        last = element;
+        AvlNode<T> node = new AvlNode<>(element, left, build(items, n - 1 - leftSize), epoch);
+        update(node);
+        return node;
+    }
+
+    /**
+     * Internal method to give the nodes of a subtree, in sorted order, the
+     * counts from counts[next] on.
+     * @return the index of the first count not used.
+     */
+    private int setCounts(AvlNode<T> node, int[] counts, int next) {
+        if (node == null)
+            return next;
+        next = setCounts(node.left, counts, next);
+        node.count = counts[next++];
+        next = setCounts(node.right, counts, next);
+        update(node);
+        return next;
+    }
+
+    /**
+     * Internal method to read a subtree written in pre-order by writeTo,
+     * keeping the heights it was written with.
+     * @return the root of the subtree.
+     */
+    private AvlNode<T> readNode(java.io.DataInput in, AVLCodec<? extends T> codec) throws java.io.IOException {
+        int flags = in.readUnsignedByte();
+        AvlNode<T> node = new AvlNode<>(codec.read(in), null, null, epoch);
+        node.height = flags & HEIGHT_BITS;
+        if ((flags & HAS_LEFT) != 0)
+            node.left = readNode(in, codec);
+        if ((flags & HAS_RIGHT) != 0)
+            node.right = readNode(in, codec);
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    /**
+     * Internal method to check that a tree read in pre-order is ordered by
+     * this tree's comparator, with no matching items if it is counted.
+     */
+    private void checkSorted() throws java.io.IOException {
+        int least = counted ? 1 : 0;
+        T previous = null;
+        for (T item : this) {
+            if (previous != null && compare(item, previous) < least)
+                throw new java.io.IOException("Stream does not match the ordering given: "
+                        + item + " after " + previous);
+            previous = item;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private AvlNode<T>[] newStack() {
+        return (AvlNode<T>[]) new AvlNode<?>[height(root) + 2];
+    }
+
+    /**
+     * Internal method to join two subtrees with a node between them.
+     * Every item of left must be no larger than node's, and every item of
+     * right no smaller. Costs O(difference in height).
+     * @return the root of the joined subtree.
+     */
+    private AvlNode<T> join(AvlNode<T> left, AvlNode<T> node, AvlNode<T> right) {
+        if (height(left) > height(right) + ALLOWED_IMBALANCE) {
+            left = own(left);
+            left.right = join(left.right, node, right);
+            return balance(left);
+        }
+        if (height(right) > height(left) + ALLOWED_IMBALANCE) {
+            right = own(right);
+            right.left = join(left, node, right.left);
+            return balance(right);
+        }
+        node = own(node);
+        node.left = left;
+        node.right = right;
+        update(node);
+        return node;
+    }
+
+    /**
+     * Internal method to split a subtree into the items smaller than a key
+     * and the rest. The nodes of the subtree are reused.
+     * @param takeEqual true to put the items matching key with the smaller ones.
+     * @return the smaller items, in split.less, and the rest, in split.rest.
+     */
+    private Split<T> split(AvlNode<T> node, T key, boolean takeEqual) {
+        if (node == null)
+            return new Split<>(null, null);
+        AvlNode<T> left = node.left;
+        AvlNode<T> right = node.right;
+        int compareResult = compare(node.element, key);
+        if (compareResult < 0 || compareResult == 0 && takeEqual) {
+            Split<T> split = split(right, key, takeEqual);
+            split.less = join(left, node, split.less);
+            return split;
+        }
+        Split<T> split = split(left, key, takeEqual);
+        split.rest = join(split.rest, node, right);
+        return split;
+    }
+
+    /**
+     * Internal method to split a subtree into its k smallest items and the
+     * rest. In a counted tree the node holding the k-th item may be cut in two.
+     * @return the k smallest items, in split.less, and the rest, in split.rest.
+     */
+    private Split<T> splitAt(AvlNode<T> node, int k) {
+        if (node == null)
+            return new Split<>(null, null);
+        AvlNode<T> left = node.left;
+        AvlNode<T> right = node.right;
+        int leftSize = size(left);
+        if (k <= leftSize) {
+            Split<T> split = splitAt(left, k);
+            split.rest = join(split.rest, node, right);
+            return split;
+        }
+        if (k >= leftSize + node.count) {
+            Split<T> split = splitAt(right, k - leftSize - node.count);
+            split.less = join(left, node, split.less);
+            return split;
+        }
+        // Some of node's items go each way
+        AvlNode<T> part = new AvlNode<>(node.element, null, null, epoch);
+        part.count = k - leftSize;
+        node = own(node);
+        node.count -= part.count;
+        return new Split<>(join(left, part, null), join(null, node, right));
+    }
+
+    /**
+     * Internal method to take the smallest node out of a subtree.
+     * @return the smallest node, in split.less, with its links left stale,
+     * and the rest of the subtree, in split.rest.
+     */
+    private Split<T> splitFirst(AvlNode<T> node) {
+        if (node.left == null)
+            return new Split<>(node, node.right);
+        AvlNode<T> right = node.right;
+        Split<T> split = splitFirst(node.left);
+        split.rest = join(split.rest, node, right);
+        return split;
+    }
+
+    /**
+     * Internal method to join two subtrees, every item of left being no
+     * larger than any item of right.
+     * @return the root of the joined subtree.
+     */
+    private AvlNode<T> concat(AvlNode<T> left, AvlNode<T> right) {
+        if (left == null)
+            return right;
+        if (right == null)
+            return left;
+        Split<T> split = splitFirst(right);
+        return join(left, split.less, split.rest);
+    }
+
+    private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    /**
+     * Internal method to apply a set operation to two subtrees, on the
+     * fork-join pool if they are large.
+     * @return the root of the resulting subtree.
+     */
+    private AvlNode<T> setOperation(SetOperation op, AvlNode<T> a, AvlNode<T> b) {
+        if (size(a) + size(b) < PARALLEL_THRESHOLD)
+            return setOperation(op, a, b, false);
+        return java.util.concurrent.ForkJoinPool.commonPool().invoke(new SetTask(op, a, b));
+    }
+
+    /**
+     * Internal method to apply a set operation by divide and conquer. Union
+     * splits b around the root of a; intersection and difference split a
+     * around the root of b, so b is only read. The two halves never share
+     * a node this tree may change, so they can run on different threads.
+     * @param a subtree whose nodes may be reused.
+     * @param b subtree that is only read, except for a union.
+     * @param parallel true to fork the larger half-problems.
+     * @return the root of the resulting subtree.
+     */
+    private AvlNode<T> setOperation(SetOperation op, AvlNode<T> a, AvlNode<T> b, boolean parallel) {
+        if (a == null)
+            return op == SetOperation.UNION ? b : null;
+        if (b == null)
+            return op == SetOperation.INTERSECTION ? null : a;
+
+        AvlNode<T> lowA, lowB, highA, highB, middle;
+        int matched = 0;   // Items of b counted into the root of a
+        if (op == SetOperation.UNION) {
+            Split<T> split = split(b, a.element, false);
+            if (counted) {
+                Split<T> equal = split(split.rest, a.element, true);
+                matched = size(equal.less);
+                split.rest = equal.rest;
+            }
+            lowA = a.left;
+            lowB = split.less;
+            highA = a.right;
+            highB = split.rest;
+            middle = a;
+        } else {
+            Split<T> less = split(a, b.element, false);
+            Split<T> equal = split(less.rest, b.element, true);
+            lowA = less.less;
+            lowB = b.left;
+            highA = equal.rest;
+            highB = b.right;
+            middle = equal.less;   // Items of a matching the root of b
+        }
+
+        AvlNode<T> low, high;
+        if (parallel && size(lowA) + size(lowB) + size(highA) + size(highB) >= PARALLEL_THRESHOLD) {
+            SetTask task = new SetTask(op, lowA, lowB);
+            task.fork();
+            high = setOperation(op, highA, highB, true);
+            low = task.join();
+        } else {
+            low = setOperation(op, lowA, lowB, parallel);
+            high = setOperation(op, highA, highB, parallel);
+        }
+
+        if (op == SetOperation.UNION) {
+            if (matched > 0) {
+                middle = own(middle);
+                middle.count += matched;
+            }
+            return join(low, middle, high);
+        }
+        if (op == SetOperation.INTERSECTION)
+            return concat(concat(low, middle), high);
+        return concat(low, high);
+    }
+
+    private class SetTask extends java.util.concurrent.RecursiveTask<AvlNode<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final SetOperation op;
+        private final AvlNode<T> a;
+        private final AvlNode<T> b;
+
+        SetTask(SetOperation op, AvlNode<T> a, AvlNode<T> b) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected AvlNode<T> compute() {
+            return setOperation(op, a, b, true);
+        }
+    }
+
+    /**
+     * Live view of the items in a range of the tree. Each iteration seeks
+     * straight to the first item of the range in O(log n).
+     */
+    public class Range implements Iterable<T> {
+        private final T lo;   // smallest item included, or null for no lower bound
+        private final T hi;   // items from hi up are left out, or null for no upper bound
+
+        private Range(T lo, T hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        private int from() {
+            return lo == null ? 0 : rank(lo);
+        }
+
+        private int to() {
+            return Math.max(from(), hi == null ? AVLTree.this.size() : rank(hi));
+        }
+
+        /**
+         * @return the number of items in the range, in O(log n).
+         */
+        public int size() {
+            return to() - from();
+        }
+
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * @return true if item is in the range and in the tree.
+         */
+        public boolean contains(T item) {
+            return (lo == null || compare(item, lo) >= 0) && (hi == null || compare(item, hi) < 0)
+                    && AVLTree.this.contains(item);
+        }
+
+        @Override
+        public java.util.Iterator<T> iterator() {
+            return new TreeIterator(from(), to(), false);
+        }
+
+        public java.util.Iterator<T> descendingIterator() {
+            return new TreeIterator(from(), to(), true);
+        }
+
+        @Override
+        public java.util.Spliterator<T> spliterator() {
+            return new TreeSpliterator(from(), to());
+        }
+
+        public java.util.stream.Stream<T> stream() {
+            return java.util.stream.StreamSupport.stream(spliterator(), false);
+        }
+    }
+
+    /**
+     * In-order iterator over the items from position from up to position to,
+     * holding the nodes still to visit on an explicit stack.
+     */
+    private class TreeIterator implements java.util.Iterator<T> {
+        private AvlNode<T>[] stack;
+        private int top;
+        private int remaining;
+        private int repeats;   // Times still to return the top node, or 0 if not yet started on it
+        private final boolean descending;
+        private final int expectedModCount = modCount;
+
+        @SuppressWarnings("unchecked")
+        TreeIterator(int from, int to, boolean descending) {
+            this.descending = descending;
+            remaining = Math.max(0, to - from);
+            stack = newStack();
+            if (remaining > 0)
+                seek(descending ? to - 1 : from);
+        }
+
+        /**
+         * Stack the nodes on the way to the k-th smallest item that are
+         * still to be visited after it, with that item on top.
+         */
+        private void seek(int k) {
+            AvlNode<T> node = root;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (k < leftSize) {
+                    if (!descending)
+                        stack[top++] = node;
+                    node = node.left;
+                } else if (k >= leftSize + node.count) {
+                    if (descending)
+                        stack[top++] = node;
+                    k -= leftSize + node.count;
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    repeats = descending ? k - leftSize + 1 : leftSize + node.count - k;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (modCount != expectedModCount)
+                throw new java.util.ConcurrentModificationException();
+            if (remaining == 0)
+                throw new java.util.NoSuchElementException();
+            remaining--;
+            AvlNode<T> node = stack[top - 1];
+            if (repeats == 0)
+                repeats = node.count;
+            if (--repeats > 0)
+                return node.element;
+            top--;
+            for (AvlNode<T> next = descending ? node.left : node.right; next != null;
+                 next = descending ? next.right : next.left)
+                stack[top++] = next;
+            return node.element;
+        }
+    }
+
+    /**
+     * Spliterator over the items from position from up to position to.
+     * Splits in half by position, and only seeks into the tree once it is used.
+     */
+    private class TreeSpliterator implements java.util.Spliterator<T> {
+        private int from;
+        private final int to;
+        private TreeIterator iterator;
+        private final int expectedModCount = modCount;
+
+        TreeSpliterator(int from, int to) {
+            this.from = from;
+            this.to = Math.max(from, to);
+        }
+
+        @Override
+        public boolean tryAdvance(java.util.function.Consumer<? super T> action) {
+            if (iterator == null) {
+                if (modCount != expectedModCount)
+                    throw new java.util.ConcurrentModificationException();
+                iterator = new TreeIterator(from, to, false);
+            }
+            if (!iterator.hasNext())
+                return false;
+            action.accept(iterator.next());
+            return true;
+        }
+
+        @Override
+        public java.util.Spliterator<T> trySplit() {
+            if (iterator != null || to - from < 2)
+                return null;
+            int mid = (from + to) >>> 1;
+            TreeSpliterator prefix = new TreeSpliterator(from, mid);
+            from = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return iterator == null ? to - from : iterator.remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL;
+        }
+
+        @Override
+        public java.util.Comparator<? super T> getComparator() {
+            return comparator;   // null for natural order
+        }
+    }
+
+    private static class Split<T> {
+        Split(AvlNode<T> less, AvlNode<T> rest) {
+            this.less = less;
+            this.rest = rest;
         }
 
-        AvlNode(T theElement, AvlNode<T> lt, AvlNode<T> rt) {
+        AvlNode<T> less;    // Items smaller than the key, or matching it if asked for
+        AvlNode<T> rest;    // The other items
+    }
+
+    /**
+     * A node of the tree. With compressed references the element, links,
+     * height and size fill 32 bytes, and count and epoch take the node to 40.
+     * Dropping only one of the two would not save anything, as nodes are
+     * padded to 8 bytes. Dropping both would mean choosing snapshots and
+     * counting when the tree is built, with a second node class that every
+     * operation has to cast to. The snapshotMemory check in main measures 39
+     * bytes a node for a mutable tree. epoch is what lets snapshot() cost
+     * O(1) on any tree. count is what lets a counted tree keep one node per
+     * distinct item: countedTree in main stores 1000000 items over 1000 keys
+     * in about 52 MB as duplicate nodes and 52 KB counted.
+     */
+    private static class AvlNode<T> {
+        // Constructors
+        AvlNode(T theElement, AvlNode<T> lt, AvlNode<T> rt, Object theEpoch) {
             element = theElement;
             left = lt;
             right = rt;
             height = 0;
+            size = 1;
+            count = 1;
+            epoch = theEpoch;
+        }
+
+        // Copy of a node shared with a snapshot
+        AvlNode(AvlNode<T> other, Object theEpoch) {
+            element = other.element;
+            left = other.left;
+            right = other.right;
+            height = other.height;
+            size = other.size;
+            count = other.count;
+            epoch = theEpoch;
         }
 
         T element;      // The data in the node
         AvlNode<T> left;         // Left child
         AvlNode<T> right;        // Right child
         int height;       // Height
+        int size;         // Number of items in this subtree
+        int count;        // Number of items this node stands for; 1 unless counted
+        Object epoch;     // Epoch of the tree when this node was made
     }
 
     /** The tree root. */
     private AvlNode<T> root;
 
+    /** The ordering, or null for compareTo. */
+    private final java.util.Comparator<? super T> comparator;
+
+    /** True to keep one node per distinct item, with a count. */
+    private final boolean counted;
+
+    /** Nodes on the way down from the root, reused by the iterative operations. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private AvlNode<T>[] path = new AvlNode[32];
+    /** For each node on the path, whether the walk went on to its left child. */
+    private boolean[] wentLeft = new boolean[32];
+
+    /** Last item placed by build, to check the items are sorted. */
+    private T last;
+
+    /** Number of changes to the tree, so iterators can detect them. */
+    private int modCount;
+
+    /**
+     * Identity of the tree since its last snapshot or share: a node this tree
+     * may change in place has this epoch, any other node may be shared. A new
+     * Object per epoch can never be confused with another tree's.
+     */
+    private Object epoch = new Object();
+
+    /** True for a snapshot, which cannot be changed. */
+    private boolean readOnly;
+
 
     // Test program
     public static void main(String[] args) {
@@ -372,6 +1654,490 @@ public class AVLTree<T extends Comparable<? super T>> implements Queue<T>
             t2.deleteMin();
             t2.printTree("\n\n The Tree after deleteMin");
         }
+
+        for (int i = 0; i < 1000; i++)
+            t.insert((i * 37) % 1000);
+        for (int i = 0; i < 500; i++) {
+            if (t.pollMin() != i || t.pollMax() != 999 - i)
+                System.out.println("pollMin/pollMax out of order at " + i);
+            t.checkBalance();
+        }
+        System.out.println("poll on empty tree: " + t.pollMin() + " " + t.pollMax());
+
+        // Random inserts and removes, checked against a count of each key
+        java.util.Random random = new java.util.Random(1);
+        int[] counts = new int[200];
+        for (int i = 0; i < 100000; i++) {
+            int x = random.nextInt(counts.length);
+            if (random.nextBoolean()) {
+                t.insert(x);
+                counts[x]++;
+            } else {
+                t.remove(x);
+                if (counts[x] > 0)
+                    counts[x]--;
+            }
+        }
+        t.checkBalance();
+        for (int x = 0; x < counts.length; x++)
+            if (t.contains(x) != (counts[x] > 0))
+                System.out.println("contains(" + x + ") is wrong");
+        int removed = 0;
+        for (int x = 0; x < counts.length; x++)
+            for (int c = 0; c < counts[x]; c++, removed++)
+                if (t.pollMin() != x)
+                    System.out.println("pollMin out of order at " + x);
+        System.out.println("removed " + removed + " items, tree empty: " + t.isEmpty());
+
+        // Bulk loads, checked against one insert at a time
+        java.util.List<Integer> sorted = new java.util.ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            sorted.add(i / 3);
+        AVLTree<Integer> built = AVLTree.buildFromSorted(sorted);
+        built.checkBalance();
+        java.util.List<Integer> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            batch.add(random.nextInt(2000));
+        built.insertAll(batch);
+        built.checkBalance();
+        batch.addAll(sorted);
+        java.util.Collections.sort(batch);
+        for (int x : batch)
+            if (built.pollMin() != x)
+                System.out.println("insertAll lost or misplaced " + x);
+        System.out.println("bulk loaded tree drained, empty: " + built.isEmpty());
+
+        // Order statistics, checked against a sorted list
+        java.util.List<Integer> items = new java.util.ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            int x = random.nextInt(500);
+            t.insert(x);
+            items.add(x);
+            if (i % 3 == 0) {
+                t.remove(items.get(i / 2));
+                items.remove(items.get(i / 2));
+            }
+        }
+        java.util.Collections.sort(items);
+        t.checkBalance();
+        if (t.size() != items.size())
+            System.out.println("size " + t.size() + " should be " + items.size());
+        for (int k = 0; k < items.size(); k++)
+            if (!t.select(k).equals(items.get(k)))
+                System.out.println("select(" + k + ") is wrong");
+        for (int x = 0; x < 500; x += 7) {
+            int below = 0;
+            while (below < items.size() && items.get(below) < x)
+                below++;
+            if (t.rank(x) != below)
+                System.out.println("rank(" + x + ") is wrong");
+        }
+        System.out.println("items in [100, 200): " + t.countRange(100, 200));
+
+        // Iterators and range views, checked against the sorted list
+        java.util.List<Integer> seen = new java.util.ArrayList<>();
+        for (int x : t)
+            seen.add(x);
+        if (!seen.equals(items))
+            System.out.println("iterator is out of order");
+        java.util.Iterator<Integer> down = t.descendingIterator();
+        for (int k = items.size() - 1; k >= 0; k--)
+            if (down.next() != (int) items.get(k))
+                System.out.println("descendingIterator is out of order at " + k);
+        java.util.List<Integer> range = new java.util.ArrayList<>();
+        t.subSet(100, 200).forEach(range::add);
+        if (range.size() != t.countRange(100, 200) || range.get(0) < 100 || range.get(range.size() - 1) >= 200)
+            System.out.println("subSet(100, 200) is wrong");
+        if (t.headSet(100).size() + t.tailSet(100).size() != t.size())
+            System.out.println("headSet and tailSet do not cover the tree");
+        long sum = items.stream().mapToLong(x -> x).sum();
+        if (t.stream().mapToLong(x -> x).sum() != sum || t.stream().parallel().mapToLong(x -> x).sum() != sum)
+            System.out.println("stream sum is wrong");
+        try {
+            for (int x : t)
+                t.insert(x);
+            System.out.println("iterator missed a change");
+        } catch (java.util.ConcurrentModificationException e) {
+            System.out.println("iterator failed fast on a change");
+        }
+
+        // Snapshots keep their contents while the tree changes
+        AVLTree<Integer> live = new AVLTree<>();
+        for (int i = 0; i < 2000; i++)
+            live.insert(random.nextInt(1000));
+        AVLTree<Integer> snap = live.snapshot();
+        java.util.List<Integer> before = new java.util.ArrayList<>();
+        snap.forEach(before::add);
+        for (int i = 0; i < 5000; i++) {
+            live.insert(random.nextInt(1000));
+            live.remove(random.nextInt(1000));
+            if (i % 1000 == 0)
+                live.snapshot();
+        }
+        live.insertAll(before);
+        live.pollMin();
+        live.pollMax();
+        java.util.List<Integer> after = new java.util.ArrayList<>();
+        snap.forEach(after::add);
+        snap.checkBalance();
+        live.checkBalance();
+        System.out.println("snapshot unchanged after writes: " + before.equals(after)
+                + ", sizes " + snap.size() + " and " + live.size());
+        try {
+            snap.insert(1);
+            System.out.println("snapshot was changed");
+        } catch (UnsupportedOperationException e) {
+            System.out.println("snapshot refused a change");
+        }
+        snapshotMemory();
+        streamRoundTrip();
+        setAlgebra();
+        countedTree();
+        queueOrder();
+    }
+
+    /**
+     * Fill plain and counted trees in batches through the Queue methods and
+     * empty them through peek, remove and drainTo, which may cut a counted
+     * node in two, checking the items come back sorted.
+     */
+    private static void queueOrder() {
+        for (boolean counted : new boolean[]{false, true}) {
+            AVLTree<Integer> queue = new AVLTree<>(null, counted);
+            java.util.Random random = new java.util.Random(7);
+            java.util.List<Integer> added = new java.util.ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                java.util.List<Integer> batch = new java.util.ArrayList<>();
+                for (int j = random.nextInt(i % 20 == 0 ? 100 : 6); j > 0; j--)
+                    batch.add(random.nextInt(100));
+                queue.addAll(batch);
+                added.addAll(batch);
+            }
+            java.util.Collections.sort(added);
+            queue.checkBalance();
+            boolean ok = queue.size() == added.size();
+            java.util.List<Integer> taken = new java.util.ArrayList<>();
+            while (!queue.isEmpty()) {
+                Integer next = queue.peek();
+                ok &= next.equals(queue.remove());
+                taken.add(next);
+                queue.drainTo(taken, random.nextInt(10));
+                queue.checkBalance();
+            }
+            ok &= taken.equals(added) && queue.peek() == null && queue.size() == 0;
+            System.out.println((counted ? "counted " : "") + "AVLTree keeps its order through addAll, peek and drainTo: " + ok);
+        }
+    }
+
+    /**
+     * Write a tree in both stream orders and read it back.
+     */
+    private static void streamRoundTrip() {
+        AVLTree<Integer> tree = new AVLTree<>();
+        java.util.Random random = new java.util.Random(9);
+        for (int i = 0; i < 100000; i++)
+            tree.insert(random.nextInt(50000));
+        java.util.List<Integer> items = new java.util.ArrayList<>();
+        tree.forEach(items::add);
+        try {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("avl", ".bin");
+            for (boolean preOrder : new boolean[]{false, true}) {
+                try (java.nio.channels.FileChannel out = java.nio.channels.FileChannel.open(file,
+                        java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+                    tree.writeTo(out, AVLCodec.INTEGER, preOrder);
+                }
+                AVLTree<Integer> loaded;
+                try (java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(file)) {
+                    loaded = AVLTree.readFrom(in, AVLCodec.INTEGER);
+                }
+                loaded.checkBalance();
+                java.util.List<Integer> read = new java.util.ArrayList<>();
+                loaded.forEach(read::add);
+                System.out.println((preOrder ? "pre-order" : "sorted") + " stream: " + java.nio.file.Files.size(file)
+                        + " bytes, read back " + (read.equals(items) ? "the same items" : "DIFFERENT items")
+                        + ", height " + loaded.height(loaded.root) + " (written " + tree.height(tree.root) + ")");
+            }
+            java.nio.file.Files.delete(file);
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+        }
+        comparatorRoundTrip();
+    }
+
+    /**
+     * Build and stream trees in reverse order, plain and counted, and check
+     * that they come back with their ordering, and that reading them in
+     * natural order is refused.
+     */
+    private static void comparatorRoundTrip() {
+        java.util.Comparator<Integer> reverse = java.util.Comparator.reverseOrder();
+        java.util.Random random = new java.util.Random(13);
+        java.util.List<Integer> items = new java.util.ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            items.add(random.nextInt(1000));
+        items.sort(reverse);
+        boolean ok = true;
+        try {
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("avl", ".bin");
+            for (boolean counted : new boolean[]{false, true}) {
+                AVLTree<Integer> tree = AVLTree.buildFromSorted(items, reverse, counted);
+                tree.checkBalance();
+                ok &= items(tree).equals(items) && tree.contains(500) == items.contains(500)
+                        && tree.findMin().equals(items.get(0));
+                if (counted)
+                    ok &= tree.count(items.get(0)) == java.util.Collections.frequency(items, items.get(0));
+                for (boolean preOrder : counted ? new boolean[]{false} : new boolean[]{false, true}) {
+                    try (java.nio.channels.FileChannel out = java.nio.channels.FileChannel.open(file,
+                            java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+                        tree.writeTo(out, AVLCodec.INTEGER, preOrder);
+                    }
+                    AVLTree<Integer> loaded;
+                    try (java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(file)) {
+                        loaded = AVLTree.readFrom(in, AVLCodec.INTEGER, reverse, counted);
+                    }
+                    loaded.checkBalance();
+                    ok &= items(loaded).equals(items) && loaded.size() == items.size();
+                    for (int x = 0; x < 1000; x += 10)
+                        ok &= loaded.contains(x) == tree.contains(x);
+                    loaded.insert(-1);
+                    ok &= loaded.findMax() == -1;
+                    try (java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(file)) {
+                        AVLTree.readFrom(in, AVLCodec.INTEGER);
+                        ok = false;
+                    } catch (java.io.IOException e) {
+                        // Reversed items are not in natural order
+                    }
+                }
+            }
+            java.nio.file.Files.delete(file);
+        } catch (java.io.IOException e) {
+            e.printStackTrace();
+            ok = false;
+        }
+        try {
+            AVLTree.buildFromSorted(items);
+            ok = false;
+        } catch (IllegalArgumentException e) {
+            // Reversed items are not in natural order
+        }
+        System.out.println("reverse-ordered trees built, streamed and read back "
+                + (ok ? "with their ordering" : "WRONG"));
+    }
+
+    /**
+     * Check split, join and the set operations against sorted lists, at
+     * sizes below and above the parallel threshold, and time a large union
+     * against inserting the items one at a time.
+     */
+    private static void setAlgebra() {
+        java.util.Random random = new java.util.Random(11);
+        boolean ok = true;
+        for (int n : new int[]{0, 1, 100, 5000, 200000}) {
+            AVLTree<Integer> a = new AVLTree<>();
+            AVLTree<Integer> b = new AVLTree<>();
+            for (int i = 0; i < n; i++) {
+                a.insert(random.nextInt(2 * n + 1));
+                b.insert(random.nextInt(2 * n + 1));
+            }
+            java.util.List<Integer> listA = new java.util.ArrayList<>();
+            java.util.List<Integer> listB = new java.util.ArrayList<>();
+            a.forEach(listA::add);
+            b.forEach(listB::add);
+            java.util.Set<Integer> keysB = new java.util.HashSet<>(listB);
+
+            java.util.List<Integer> union = new java.util.ArrayList<>(listA);
+            union.addAll(listB);
+            java.util.Collections.sort(union);
+            java.util.List<Integer> common = new java.util.ArrayList<>();
+            java.util.List<Integer> only = new java.util.ArrayList<>();
+            for (Integer x : listA)
+                (keysB.contains(x) ? common : only).add(x);
+
+            AVLTree<Integer> u = copy(a);
+            u.union(b);
+            AVLTree<Integer> i = copy(a);
+            i.intersection(b);
+            AVLTree<Integer> d = copy(a);
+            d.difference(b);
+            b.insert(-1);   // b shares nodes with u now; this must not show in u
+            ok &= items(u).equals(union) && items(i).equals(common) && items(d).equals(only)
+                    && items(a).equals(listA);
+
+            Integer key = n / 2;
+            AVLTree<Integer> high = a.split(key);
+            ok &= a.size() + high.size() == listA.size() && (a.isEmpty() || a.findMax() < key)
+                    && (high.isEmpty() || high.findMin() >= key);
+            AVLTree<Integer> joined = AVLTree.join(a, key, high);
+            java.util.List<Integer> withKey = new java.util.ArrayList<>(listA);
+            withKey.add(key);
+            java.util.Collections.sort(withKey);
+            ok &= items(joined).equals(withKey);
+            AVLTree<Integer> upper = joined.split(key);
+            java.util.List<Integer> upperItems = items(upper);
+            joined.union(upper);   // joined takes in nodes of upper
+            joined.insert(key);    // and must copy them before changing them
+            ok &= items(upper).equals(upperItems) && joined.size() == withKey.size() + 1;
+            for (AVLTree<Integer> t : java.util.List.of(u, i, d, a, high, joined))
+                t.checkBalance();
+        }
+        System.out.println("split, join, union, intersection and difference "
+                + (ok ? "match sorted lists" : "DO NOT match sorted lists"));
+
+        // merged and inserted are built apart rather than copied from one
+        // tree, so each owns its nodes and changes them in place
+        int n = 1000000;
+        AVLTree<Integer> merged = new AVLTree<>();
+        AVLTree<Integer> inserted = new AVLTree<>();
+        AVLTree<Integer> b = new AVLTree<>();
+        for (int k = 0; k < n; k++) {
+            Integer x = random.nextInt();
+            merged.insert(x);
+            inserted.insert(x);
+            b.insert(random.nextInt());
+        }
+        long start = System.nanoTime();
+        merged.union(b);
+        long unionTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (Integer x : b)
+            inserted.insert(x);
+        long insertTime = System.nanoTime() - start;
+        merged.checkBalance();
+        System.out.println("union of two " + n + "-item trees: " + unionTime / 1000000 + " ms, "
+                + insertTime / 1000000 + " ms inserting one at a time, on "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+    }
+
+    /**
+     * Check a counted tree against an array of counts, and compare its
+     * node count with a tree holding every duplicate as a node.
+     */
+    private static void countedTree() {
+        AVLTree<Dwarf> dwarfs = new AVLTree<>(null, true);
+        for (String name : new String[]{"Doc", "Grumpy", "Bashful", "Doc", "Grumpy", "Bashful", "Doc"})
+            dwarfs.insert(new Dwarf(name));
+        dwarfs.removeOne(new Dwarf("Grumpy"));
+        dwarfs.printTree("\nCounted tree after removing one Grumpy");
+        System.out.println("Doc counted " + dwarfs.count(new Dwarf("Doc")) + " times, size " + dwarfs.size());
+
+        java.util.Random random = new java.util.Random(17);
+        AVLTree<Integer> tree = new AVLTree<>(null, true);
+        AVLTree<Integer> plain = new AVLTree<>();
+        int[] counts = new int[100];
+        boolean ok = true;
+        for (int i = 0; i < 200000; i++) {
+            int x = random.nextInt(counts.length);
+            int action = random.nextInt(10);
+            if (action < 6) {
+                tree.insert(x);
+                plain.insert(x);
+                counts[x]++;
+            } else if (action < 9) {
+                ok &= tree.removeOne(x) == (counts[x] > 0);
+                plain.remove(x);
+                if (counts[x] > 0)
+                    counts[x]--;
+            } else if (i % 100 == 0) {
+                ok &= tree.removeAll(x) == counts[x];
+                plain.removeAll(x);
+                counts[x] = 0;
+            }
+        }
+        java.util.List<Integer> batch = new java.util.ArrayList<>();
+        for (int i = 0; i < tree.size(); i++)
+            batch.add(i % 7 == 0 ? 500 : random.nextInt(counts.length));
+        tree.insertAll(batch);   // Large enough to be built and merged
+        plain.insertAll(batch);
+        AVLTree<Integer> more = new AVLTree<>(null, true);
+        for (int x = 0; x < 200; x += 3)
+            more.insert(x);
+        tree.union(more);
+        plain.union(copyAll(more));
+        tree.checkBalance();
+        ok &= items(tree).equals(items(plain)) && tree.size() == plain.size();
+        for (int x = 0; x <= 500; x++)
+            ok &= tree.count(x) == plain.count(x);
+        for (int k = 0; k < tree.size(); k += 97)
+            ok &= tree.select(k).equals(plain.select(k));
+        java.util.List<Integer> down = new java.util.ArrayList<>();
+        tree.descendingIterator().forEachRemaining(down::add);
+        java.util.Collections.reverse(down);
+        ok &= down.equals(items(plain));
+        java.util.List<Integer> range = new java.util.ArrayList<>();
+        tree.subSet(10, 20).forEach(range::add);
+        ok &= range.equals(items(plain).subList(plain.rank(10), plain.rank(20)));
+        while (!plain.isEmpty())
+            ok &= tree.pollMin().equals(plain.pollMin());
+        ok &= tree.isEmpty();
+        System.out.println("counted tree matches a tree of duplicate nodes: " + ok);
+
+        int n = 1000000;
+        long base = usedMemory();
+        AVLTree<Integer> nodes = new AVLTree<>();
+        for (int i = 0; i < n; i++)
+            nodes.insert(i % 1000);
+        long nodeBytes = usedMemory() - base;
+        AVLTree<Integer> counted = new AVLTree<>(null, true);
+        for (int i = 0; i < n; i++)
+            counted.insert(i % 1000);
+        long countedBytes = usedMemory() - base - nodeBytes;
+        System.out.println(n + " items over 1000 keys: " + nodeBytes / 1024 + " KB as duplicate nodes, "
+                + countedBytes / 1024 + " KB counted (sizes " + nodes.size() + " and " + counted.size() + ")");
+    }
+
+    /** A tree holding every item of a counted tree as its own node. */
+    private static AVLTree<Integer> copyAll(AVLTree<Integer> tree) {
+        AVLTree<Integer> copy = new AVLTree<>();
+        copy.insertAll(items(tree));
+        return copy;
+    }
+
+    /** A writable tree sharing every node of tree, from a union with an empty tree. */
+    private static AVLTree<Integer> copy(AVLTree<Integer> tree) {
+        AVLTree<Integer> copy = new AVLTree<>();
+        copy.union(tree);
+        return copy;
+    }
+
+    private static java.util.List<Integer> items(AVLTree<Integer> tree) {
+        java.util.List<Integer> items = new java.util.ArrayList<>();
+        tree.forEach(items::add);
+        return items;
+    }
+
+    /**
+     * Report the heap taken by a tree of Integers, alone and with a snapshot
+     * taken every 1000 updates, against the tree with no snapshots.
+     */
+    private static void snapshotMemory() {
+        int n = 200000;
+        Integer[] keys = new Integer[2 * n];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = i;
+        long base = usedMemory();
+        AVLTree<Integer> tree = new AVLTree<>();
+        java.util.Random random = new java.util.Random(3);
+        for (int i = 0; i < n; i++)
+            tree.insert(keys[random.nextInt(keys.length)]);
+        long mutable = usedMemory() - base;
+        java.util.List<AVLTree<Integer>> snapshots = new java.util.ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            if (i % 1000 == 0)
+                snapshots.add(tree.snapshot());
+            tree.insert(keys[random.nextInt(keys.length)]);
+            tree.remove(keys[random.nextInt(keys.length)]);
+        }
+        long withSnapshots = usedMemory() - base;
+        System.out.println(n + " nodes: " + mutable / n + " bytes/node mutable, "
+                + withSnapshots / n + " bytes/node with " + snapshots.size()
+                + " snapshots over 10000 updates (" + tree.size() + " items)");
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
     }
 
 }
@@ -0,0 +1,77 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters shared by every AVLTree: rotations by type, and the greatest
+ * height a tree has reached. They are published through JMX as
+ * AVLTree:type=AVLTreeMetrics.
+ * Run with -Davl.metrics=false to switch them off; AVLTree then skips the
+ * counting code entirely, since ENABLED is a constant.
+ */
+public class AVLTreeMetrics implements AVLTreeMetricsMBean {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("avl.metrics", "true"));
+    public static final AVLTreeMetrics INSTANCE = new AVLTreeMetrics();
+
+    final LongAdder rightRotations = new LongAdder();
+    final LongAdder leftRotations = new LongAdder();
+    final LongAdder doubleRightRotations = new LongAdder();
+    final LongAdder doubleLeftRotations = new LongAdder();
+    final LongAccumulator maxHeight = new LongAccumulator(Math::max, -1);
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName("AVLTree:type=AVLTreeMetrics"));
+            } catch (JMException e) {
+                System.err.println("AVLTreeMetrics not published through JMX: " + e);
+            }
+        }
+    }
+
+    private AVLTreeMetrics() {
+    }
+
+    @Override
+    public long getRightRotations() {
+        return rightRotations.sum();
+    }
+
+    @Override
+    public long getLeftRotations() {
+        return leftRotations.sum();
+    }
+
+    @Override
+    public long getDoubleRightRotations() {
+        return doubleRightRotations.sum();
+    }
+
+    @Override
+    public long getDoubleLeftRotations() {
+        return doubleLeftRotations.sum();
+    }
+
+    @Override
+    public long getMaxHeight() {
+        return maxHeight.get();
+    }
+
+    @Override
+    public void reset() {
+        rightRotations.reset();
+        leftRotations.reset();
+        doubleRightRotations.reset();
+        doubleLeftRotations.reset();
+        maxHeight.reset();
+    }
+
+    public String toString() {
+        return "rotations: right " + getRightRotations() + ", left " + getLeftRotations() + ", double right "
+                + getDoubleRightRotations() + ", double left " + getDoubleLeftRotations()
+                + "; max height " + getMaxHeight();
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Rotations done and height reached by every AVLTree, as published through JMX.
+ */
+public interface AVLTreeMetricsMBean {
+    long getRightRotations();
+
+    long getLeftRotations();
+
+    long getDoubleRightRotations();
+
+    long getDoubleLeftRotations();
+
+    /**
+     * @return greatest height any tree has reached, -1 if no tree has had an item.
+     */
+    long getMaxHeight();
+
+    void reset();
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/**
+ * Slots, free list and balancing shared by ArrayAVLTree, IntAVLTree and
+ * LongAVLTree, which differ only in the type of their keys.
+ * A node is an int slot: its children are left[slot] and right[slot] and
+ * its height is height[slot]; the subclass keeps its key in an array of
+ * its own, indexed the same way, and does the comparisons so its keys are
+ * never boxed. Slot 0 is the empty tree, with height -1, so no null checks
+ * are needed. Removed slots go on a free list, chained through left, and
+ * are reused by later inserts.
+ */
+abstract class AbstractArrayAVLTree {
+    static final int NIL = 0;
+    private static final int ALLOWED_IMBALANCE = 1;
+    static final int DEFAULT_CAPACITY = 16;
+
+    int[] left;              // Left child of each slot
+    int[] right;             // Right child of each slot
+    byte[] height;           // Height of each slot
+    int root = NIL;
+    private int free = NIL;  // First slot on the free list
+    private int next = 1;    // First slot never used
+    private int size;
+
+    /**
+     * @param capacity number of items to make room for up front.
+     */
+    AbstractArrayAVLTree(int capacity) {
+        capacity = Math.max(capacity, 1) + 1;
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+        height[NIL] = -1;
+    }
+
+    /**
+     * @return the number of items in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Test if the tree is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    /**
+     * Make the tree logically empty. The arrays keep their capacity.
+     */
+    public void makeEmpty() {
+        root = NIL;
+        free = NIL;
+        next = 1;
+        size = 0;
+    }
+
+    public void checkBalance() {
+        checkBalance(root);
+    }
+
+    private int checkBalance(int node) {
+        if (node == NIL)
+            return -1;
+
+        int hl = checkBalance(left[node]);
+        int hr = checkBalance(right[node]);
+        if (Math.abs(height[left[node]] - height[right[node]]) > 1 ||
+                height[left[node]] != hl || height[right[node]] != hr)
+            System.out.println("\n\n***********************OOPS!!");
+
+        return height[node];
+    }
+
+    /**
+     * Make the key array as long as the slot arrays.
+     * @param capacity the new length.
+     */
+    abstract void growKeys(int capacity);
+
+    /**
+     * Copy the key of one slot into another.
+     */
+    abstract void copyKey(int from, int to);
+
+    /**
+     * Drop the key of a freed slot, so it does not keep an object alive.
+     */
+    void clearKey(int node) {
+    }
+
+    /**
+     * Internal method to find the slot of the smallest item.
+     */
+    final int leftmost() {
+        if (isEmpty())
+            throw new RuntimeException();
+        int node = root;
+        while (left[node] != NIL)
+            node = left[node];
+        return node;
+    }
+
+    /**
+     * Internal method to find the slot of the largest item.
+     */
+    final int rightmost() {
+        if (isEmpty())
+            throw new RuntimeException();
+        int node = root;
+        while (right[node] != NIL)
+            node = right[node];
+        return node;
+    }
+
+    /**
+     * Internal method to take a slot for a new leaf, from the free list if it has one.
+     * The arrays may grow, so the caller stores the key only after this returns.
+     */
+    final int newNode() {
+        int node = free;
+        if (node != NIL)
+            free = left[node];
+        else {
+            if (next == left.length)
+                grow();
+            node = next++;
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 0;
+        size++;
+        return node;
+    }
+
+    /**
+     * Internal method to put a slot on the free list.
+     */
+    private void freeNode(int node) {
+        clearKey(node);
+        left[node] = free;
+        free = node;
+        size--;
+    }
+
+    private void grow() {
+        int capacity = left.length * 2;
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        growKeys(capacity);
+    }
+
+    /**
+     * Internal method to remove a node the search has matched.
+     * @return the new root of the subtree the node was the root of.
+     */
+    final int removeNode(int node) {
+        if (left[node] != NIL && right[node] != NIL) // Two children
+        {
+            int successor = right[node];
+            while (left[successor] != NIL)
+                successor = left[successor];
+            copyKey(successor, node);
+            right[node] = deleteMin(right[node]);
+            return balance(node);
+        }
+        int child = (left[node] != NIL) ? left[node] : right[node];
+        freeNode(node);
+        return child;
+    }
+
+    /**
+     * Internal method to remove the smallest node of a subtree.
+     * @return the new root of the subtree.
+     */
+    private int deleteMin(int node) {
+        if (left[node] == NIL) {
+            int child = right[node];
+            freeNode(node);
+            return child;
+        }
+        left[node] = deleteMin(left[node]);
+        return balance(node);
+    }
+
+    // Assume node is either balanced or within one of being balanced
+    final int balance(int node) {
+        if (height[left[node]] - height[right[node]] > ALLOWED_IMBALANCE)
+            if (height[left[left[node]]] >= height[right[left[node]]])
+                node = rightRotation(node);
+            else
+                node = doubleRightRotation(node);
+        else if (height[right[node]] - height[left[node]] > ALLOWED_IMBALANCE)
+            if (height[right[right[node]]] >= height[left[right[node]]])
+                node = leftRotation(node);
+            else
+                node = doubleLeftRotation(node);
+
+        update(node);
+        return node;
+    }
+
+    private void update(int node) {
+        height[node] = (byte) (Math.max(height[left[node]], height[right[node]]) + 1);
+    }
+
+    private int rightRotation(int node) {
+        int theLeft = left[node];
+        left[node] = right[theLeft];
+        right[theLeft] = node;
+        update(node);
+        update(theLeft);
+        return theLeft;
+    }
+
+    private int leftRotation(int node) {
+        int theRight = right[node];
+        right[node] = left[theRight];
+        left[theRight] = node;
+        update(node);
+        update(theRight);
+        return theRight;
+    }
+
+    private int doubleRightRotation(int node) {
+        left[node] = leftRotation(left[node]);
+        return rightRotation(node);
+    }
+
+    private int doubleLeftRotation(int node) {
+        right[node] = rightRotation(right[node]);
+        return leftRotation(node);
+    }
+}
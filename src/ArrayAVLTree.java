@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+// ArrayAVLTree class
+//
+// CONSTRUCTION: with no initializer, or with an initial capacity
+//
+// ******************PUBLIC OPERATIONS*********************
+// void insert( x )       --> Insert x
+// void remove( x )       --> Remove x
+// boolean contains( x )  --> Return true if x is present
+// Comparable findMin( )  --> Return smallest item
+// Comparable findMax( )  --> Return largest item
+// int size( )            --> Return number of items
+// boolean isEmpty( )     --> Return true if empty; else false
+// void makeEmpty( )      --> Remove all items
+// ******************ERRORS********************************
+// findMin and findMax throw RuntimeException on an empty tree
+
+/**
+ * AVL tree that keeps its nodes in parallel arrays instead of node objects.
+ * A node is an int slot: its children are left[slot] and right[slot], its
+ * height is height[slot] and its item is keys[slot]. The slots, free list
+ * and balancing are AbstractArrayAVLTree's, shared with IntAVLTree and
+ * LongAVLTree, which hold int and long keys instead.
+ * Note that all "matching" is based on the compareTo method.
+ */
+public class ArrayAVLTree<T extends Comparable<? super T>> extends AbstractArrayAVLTree {
+    private Object[] keys;   // Item of each slot
+
+    /**
+     * Construct the tree.
+     */
+    public ArrayAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of items to make room for up front.
+     */
+    public ArrayAVLTree(int capacity) {
+        super(capacity);
+        keys = new Object[left.length];
+    }
+
+    /**
+     * @param item the item to insert.
+     */
+    public void insert(T item) {
+        root = insert(item, root);
+    }
+
+    /**
+     * Remove from the tree. Nothing is done if item is not found.
+     * @param item the item to remove.
+     */
+    public void remove(T item) {
+        root = remove(item, root);
+    }
+
+    /**
+     * Find an item in the tree.
+     * @param item the item to search for.
+     * @return true if item is found.
+     */
+    public boolean contains(T item) {
+        int node = root;
+        while (node != NIL) {
+            int compareResult = item.compareTo(key(node));
+
+            if (compareResult < 0)
+                node = left[node];
+            else if (compareResult > 0)
+                node = right[node];
+            else
+                return true;    // Match
+        }
+        return false;   // No match
+    }
+
+    /**
+     * Find the smallest item in the tree.
+     * @return smallest item.
+     */
+    public T findMin() {
+        return key(leftmost());
+    }
+
+    /**
+     * Find the largest item in the tree.
+     * @return the largest item.
+     */
+    public T findMax() {
+        return key(rightmost());
+    }
+
+    /**
+     * Make the tree logically empty. The arrays keep their capacity.
+     */
+    @Override
+    public void makeEmpty() {
+        Arrays.fill(keys, null);
+        super.makeEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(int node) {
+        return (T) keys[node];
+    }
+
+    @Override
+    void growKeys(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    void copyKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    @Override
+    void clearKey(int node) {
+        keys[node] = null;
+    }
+
+    /**
+     * Internal method to insert into a subtree. Duplicates are allowed.
+     * The arrays may grow, so a child is stored only after the call returns.
+     * @return the new root of the subtree.
+     */
+    private int insert(T item, int node) {
+        if (node == NIL) {
+            node = newNode();
+            keys[node] = item;
+            return node;
+        }
+
+        if (item.compareTo(key(node)) < 0) {
+            int child = insert(item, left[node]);
+            left[node] = child;
+        } else {
+            int child = insert(item, right[node]);
+            right[node] = child;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     * @return the new root of the subtree.
+     */
+    private int remove(T item, int node) {
+        if (node == NIL)
+            return node;   // Item not found; do nothing
+
+        int compareResult = item.compareTo(key(node));
+
+        if (compareResult < 0)
+            left[node] = remove(item, left[node]);
+        else if (compareResult > 0)
+            right[node] = remove(item, right[node]);
+        else
+            return removeNode(node);
+        return balance(node);
+    }
+
+    // Test program: footprint and contains throughput against AVLTree, for
+    // n random Integer keys. Pass n, default 1000000.
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        java.util.Random random = new java.util.Random(5);
+        int[] ints = new int[n];
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = random.nextInt();
+            boxed[i] = ints[i];
+        }
+
+        long base = usedMemory();
+        AVLTree<Integer> nodes = new AVLTree<>();
+        for (Integer x : boxed)
+            nodes.insert(x);
+        long nodeBytes = usedMemory() - base;
+        ArrayAVLTree<Integer> arrays = new ArrayAVLTree<>(n);
+        for (Integer x : boxed)
+            arrays.insert(x);
+        long arrayBytes = usedMemory() - base - nodeBytes;
+        IntAVLTree primitive = new IntAVLTree(n);
+        for (int x : ints)
+            primitive.insert(x);
+        long intBytes = usedMemory() - base - nodeBytes - arrayBytes;
+        arrays.checkBalance();
+        primitive.checkBalance();
+        System.out.println("bytes per item, not counting the Integers: AVLTree " + nodeBytes / n
+                + ", ArrayAVLTree " + arrayBytes / n + ", IntAVLTree " + intBytes / n);
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (Integer x : boxed)
+                if (nodes.contains(x))
+                    found++;
+            long nodeTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Integer x : boxed)
+                if (arrays.contains(x))
+                    found++;
+            long arrayTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int x : ints)
+                if (primitive.contains(x))
+                    found++;
+            long intTime = System.nanoTime() - start;
+            System.out.println("contains, ns per lookup: AVLTree " + nodeTime / n + ", ArrayAVLTree "
+                    + arrayTime / n + ", IntAVLTree " + intTime / n + " (" + found + " found)");
+        }
+
+        for (int i = 0; i < n; i += 2) {
+            arrays.remove(boxed[i]);
+            primitive.remove(ints[i]);
+        }
+        for (int i = 0; i < n; i += 2) {
+            arrays.insert(boxed[i]);
+            primitive.insert(ints[i]);
+        }
+        arrays.checkBalance();
+        primitive.checkBalance();
+        System.out.println("after removing and reinserting half: sizes " + arrays.size() + " and " + primitive.size());
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Workloads for the JMH benchmarks in the benchmarks module: AVLTree
+ * operations over sequential, random and Zipfian keys, the Queue
+ * implementations as BFS and A* frontiers, and ladder queries.
+ * JMH only runs benchmarks in a named package, and classes there cannot
+ * name the classes of this one, so the methods here take and return
+ * Object and the JDK's types; the benchmarks call them through method handles.
+ * Each benchmark runs in its own JVM, so the Queue call sites in bfs and
+ * aStar only ever see the one queue type a benchmark picks.
+ * main runs every workload once at a small size and checks that queues of
+ * the same kind agree; it times nothing.
+ */
+public class Benchmarks {
+    /** Ladder queries: the source and dest pairs of LadderGameSolution.main. */
+    private static final String[] SOURCE = {"irk", "hit", "toes", "oops", "toes",  "ride", "happily", "slow", "stone", "biff", "unabated", "basket"};
+    private static final String[] DEST = {"yuk", "hog", "tied", "tots", "tied", "ands", "angrily", "fast", "money", "axal", "notified", "doughy"};
+
+    private static final PrintStream QUIET = new PrintStream(OutputStream.nullOutputStream());
+
+    /**
+     * n keys: 0 to n-1 in order, uniformly random, or Zipfian over n
+     * distinct scattered values with exponent 0.99, so a few keys repeat often.
+     */
+    public static Integer[] keys(String distribution, int n, long seed) {
+        Random random = new Random(seed);
+        Integer[] keys = new Integer[n];
+        if (distribution.equals("sequential")) {
+            for (int i = 0; i < n; i++)
+                keys[i] = i;
+        } else if (distribution.equals("random")) {
+            for (int i = 0; i < n; i++)
+                keys[i] = random.nextInt();
+        } else if (distribution.equals("zipfian")) {
+            double[] cumulative = new double[n];
+            double total = 0;
+            for (int rank = 0; rank < n; rank++) {
+                total += 1 / Math.pow(rank + 1, 0.99);
+                cumulative[rank] = total;
+            }
+            for (int i = 0; i < n; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                rank = rank < 0 ? -rank - 1 : rank;
+                keys[i] = rank * 0x9E3779B1;
+            }
+        } else
+            throw new IllegalArgumentException("Unknown distribution " + distribution);
+        return keys;
+    }
+
+    /**
+     * @return a new AVLTree holding keys.
+     */
+    public static Object filledTree(Integer[] keys) {
+        AVLTree<Integer> tree = new AVLTree<>();
+        for (Integer key : keys)
+            tree.insert(key);
+        return tree;
+    }
+
+    /**
+     * Insert keys one at a time into a new AVLTree.
+     * @return the size of the tree.
+     */
+    public static long insert(Integer[] keys) {
+        AVLTree<Integer> tree = new AVLTree<>();
+        for (Integer key : keys)
+            tree.insert(key);
+        return tree.size();
+    }
+
+    /**
+     * @return how many of probes tree holds.
+     */
+    @SuppressWarnings("unchecked")
+    public static long contains(Object tree, Integer[] probes) {
+        AVLTree<Integer> t = (AVLTree<Integer>) tree;
+        long found = 0;
+        for (Integer probe : probes)
+            if (t.contains(probe))
+                found++;
+        return found;
+    }
+
+    /**
+     * Remove keys from tree one at a time.
+     * @return the size of the tree afterwards.
+     */
+    @SuppressWarnings("unchecked")
+    public static long remove(Object tree, Integer[] keys) {
+        AVLTree<Integer> t = (AVLTree<Integer>) tree;
+        for (Integer key : keys)
+            t.remove(key);
+        return t.size();
+    }
+
+    /**
+     * Remove the n smallest items of tree with pollMin.
+     * @return the sum of the items removed.
+     */
+    @SuppressWarnings("unchecked")
+    public static long deleteMin(Object tree, int n) {
+        AVLTree<Integer> t = (AVLTree<Integer>) tree;
+        long sum = 0;
+        for (int i = 0; i < n; i++)
+            sum += t.pollMin();
+        return sum;
+    }
+
+    /**
+     * @param kind MyLinkedList, ChunkedQueue or SpscQueue for a FIFO; AVLTree,
+     * counted AVLTree, IndexedHeap or BucketQueue for a priority queue.
+     * @return a new empty Queue of Integers.
+     */
+    public static Object newQueue(String kind) {
+        switch (kind) {
+            case "MyLinkedList":
+                return new MyLinkedList<Integer>();
+            case "ChunkedQueue":
+                return new ChunkedQueue<Integer>();
+            case "SpscQueue":
+                return new SpscQueue<Integer>(1 << 18);
+            case "AVLTree":
+                return new AVLTree<Integer>();
+            case "counted AVLTree":
+                return new AVLTree<Integer>(null, true);
+            case "IndexedHeap":
+                return new IndexedHeap<Integer>();
+            case "BucketQueue":
+                return new BucketQueue<Integer>(x -> x);
+            default:
+                throw new IllegalArgumentException("Unknown queue " + kind);
+        }
+    }
+
+    /**
+     * Breadth first frontier: remove one, add two, until n have been removed,
+     * keeping the frontier under 100000. Leaves the queue empty.
+     * @return the sum of the items removed.
+     */
+    @SuppressWarnings("unchecked")
+    public static long bfs(Object frontier, int n) {
+        Queue<Integer> queue = (Queue<Integer>) frontier;
+        long sum = 0;
+        queue.add(0);
+        for (int i = 0; i < n; i++) {
+            Integer x = queue.remove();
+            sum += x;
+            if (queue.size() < 100_000) {
+                queue.add(x + 1);
+                queue.add(x + 2);
+            }
+        }
+        while (!queue.isEmpty())
+            queue.remove();
+        return sum;
+    }
+
+    /**
+     * A* frontier: add three slightly worse than the last one removed, then
+     * remove the best, n times. Leaves the queue empty.
+     * @return the sum of the items removed.
+     */
+    @SuppressWarnings("unchecked")
+    public static long aStar(Object frontier, int n) {
+        return aStar((Queue<Integer>) frontier, n, false);
+    }
+
+    /**
+     * The aStar frontier with each step's three items added by one addAll,
+     * as findLadder adds the ladders of one expansion.
+     * @return the sum of the items removed.
+     */
+    @SuppressWarnings("unchecked")
+    public static long aStarBatched(Object frontier, int n) {
+        return aStar((Queue<Integer>) frontier, n, true);
+    }
+
+    private static long aStar(Queue<Integer> queue, int n, boolean batched) {
+        Random random = new Random(42);
+        java.util.List<Integer> batch = new java.util.ArrayList<>();
+        long sum = 0;
+        int floor = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < 3; j++)
+                batch.add(floor + random.nextInt(16));
+            if (batched)
+                queue.addAll(batch);
+            else
+                for (Integer x : batch)
+                    queue.add(x);
+            batch.clear();
+            floor = queue.remove();
+            sum += floor;
+        }
+        while (!queue.isEmpty())
+            queue.remove();
+        return sum;
+    }
+
+    /**
+     * Producer side of a two-thread pipeline; never waits.
+     * @return true if x was added, false if the queue was full.
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean offer(Object queue, Integer x) {
+        return ((SpscQueue<Integer>) queue).offer(x);
+    }
+
+    /**
+     * Consumer side of a two-thread pipeline; never waits.
+     * @return the next item, or null if the queue was empty.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object poll(Object queue) {
+        return ((SpscQueue<Integer>) queue).remove();
+    }
+
+    public static int queryCount() {
+        return SOURCE.length;
+    }
+
+    /**
+     * @return a LadderGameSolution for dictionary.
+     */
+    public static Object newLadderGame(String dictionary) {
+        return new LadderGameSolution(dictionary);
+    }
+
+    /**
+     * @return a LadderSolver sharing the graphs of game, with no landmarks and no answer cache.
+     */
+    public static Object newLadderSolver(Object game) {
+        return new LadderSolver((LadderGameSolution) game);
+    }
+
+    /**
+     * Answer ladder query number query with LadderSolver.
+     * @return the number of words enqueued.
+     */
+    public static long solve(Object solver, int query, boolean isAStar) {
+        return ((LadderSolver) solver).solve(SOURCE[query], DEST[query], isAStar).enqueues;
+    }
+
+    /**
+     * Answer ladder query number query with LadderGameSolution.findLadder,
+     * with its printing thrown away.
+     * @return the moves in the ladder found, -1 if there is none.
+     */
+    public static long findLadder(Object game, int query, boolean isAStar) {
+        PrintStream out = System.out;
+        System.setOut(QUIET);
+        try {
+            LadderInfo ladder = ((LadderGameSolution) game).findLadder(SOURCE[query], DEST[query],
+                    isAStar ? new AVLTree<>() : new ChunkedQueue<>(), isAStar);
+            return ladder == null ? -1 : ladder.moves;
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    // Test program: run each workload once, small, and check that the
+    // queues of each kind agree on their checksums
+    public static void main(String[] args) {
+        for (String distribution : new String[]{"sequential", "random", "zipfian"}) {
+            Integer[] keys = keys(distribution, 1000, 1);
+            Object tree = filledTree(keys);
+            boolean ok = insert(keys) == 1000 && contains(tree, keys) == 1000
+                    && deleteMin(filledTree(keys), 1000) == Arrays.stream(keys).mapToLong(x -> x).sum()
+                    && remove(tree, keys) == 0;
+            System.out.println("tree workloads on " + distribution + " keys: " + ok);
+        }
+        long fifo = bfs(newQueue("MyLinkedList"), 100_000);
+        boolean ok = bfs(newQueue("ChunkedQueue"), 100_000) == fifo && bfs(newQueue("SpscQueue"), 100_000) == fifo;
+        System.out.println("FIFO queues agree on the BFS frontier: " + ok);
+        long best = aStar(newQueue("AVLTree"), 100_000);
+        ok = true;
+        for (String kind : new String[]{"counted AVLTree", "IndexedHeap", "BucketQueue"})
+            ok &= aStar(newQueue(kind), 100_000) == best;
+        for (String kind : new String[]{"AVLTree", "IndexedHeap", "BucketQueue"})
+            ok &= aStarBatched(newQueue(kind), 100_000) == best;
+        System.out.println("priority queues agree on the A* frontier, added one by one or in batches: " + ok);
+        Object pipe = new SpscQueue<Integer>(4);
+        ok = offer(pipe, 1) && Integer.valueOf(1).equals(poll(pipe)) && poll(pipe) == null;
+        System.out.println("pipeline offer and poll: " + ok);
+
+        Object game = newLadderGame("src/dictionary.txt");
+        Object solver = newLadderSolver(game);
+        long enqueues = 0;
+        for (int query = 0; query < queryCount(); query++) {
+            enqueues += solve(solver, query, true);
+            findLadder(game, query, true);
+        }
+        System.out.println("answered " + queryCount() + " ladder queries, " + enqueues + " A* enqueues");
+    }
+}
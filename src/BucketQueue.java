@@ -0,0 +1,155 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Priority queue for small, non-negative int priorities, such as the
+ * totalCost of a LadderInfo. Each priority has its own first in first out bucket,
+ * so add and remove cost O(1) plus the distance the minimum moves.
+ * When built with a key function the queue holds at most one element per key:
+ * adding an element with a lower priority than the queued one for its key
+ * moves the key to the lower bucket (decrease-key). The element it replaces is
+ * left behind and skipped when its bucket is reached.
+ */
+public class BucketQueue<E> implements Queue<E> {
+    private final ToIntFunction<? super E> priority;
+    private final Function<? super E, ?> key;     // null when duplicates are allowed
+    private final HashMap<Object, E> queued;     // element currently queued for each key
+    private ArrayDeque<E>[] buckets;
+    private int min;                             // no element, live or replaced, has a lower priority
+    private int size;                            // live elements, not counting replaced ones
+    private int entries;                         // elements in the buckets, replaced ones included
+
+    /**
+     * Construct a queue that allows duplicates.
+     * @param priority maps an element to its priority.
+     */
+    public BucketQueue(ToIntFunction<? super E> priority) {
+        this(priority, null);
+    }
+
+    /**
+     * @param priority maps an element to its priority.
+     * @param key maps an element to its key, or null to allow duplicates.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BucketQueue(ToIntFunction<? super E> priority, Function<? super E, ?> key) {
+        this.priority = priority;
+        this.key = key;
+        queued = key == null ? null : new HashMap<>();
+        buckets = new ArrayDeque[16];
+    }
+
+    /**
+     * Add an element. With a key function, an element whose key is already
+     * queued replaces the queued one only if its priority is lower.
+     * @param data the element to add.
+     */
+    @Override
+    public void add(E data) {
+        int p = priority.applyAsInt(data);
+        if (p < 0)
+            throw new IllegalArgumentException("Negative priority " + p);
+        if (queued != null) {
+            E old = queued.put(key.apply(data), data);
+            if (old != null) {
+                if (priority.applyAsInt(old) <= p) {
+                    queued.put(key.apply(data), old);
+                    return;
+                }
+                size--;   // old stays in its bucket but is no longer live
+            }
+        }
+        if (p >= buckets.length)
+            buckets = Arrays.copyOf(buckets, Math.max(p + 1, buckets.length * 2));
+        if (buckets[p] == null)
+            buckets[p] = new ArrayDeque<>();
+        buckets[p].addLast(data);
+        if (entries == 0 || p < min)
+            min = p;
+        entries++;
+        size++;
+    }
+
+    /**
+     * Remove an element of the lowest priority, first added first.
+     * @return the element, or null if empty.
+     */
+    @Override
+    public E remove() {
+        E data = peek();
+        if (data != null) {
+            buckets[min].pollFirst();
+            entries--;
+            if (queued != null)
+                queued.remove(key.apply(data));
+            size--;
+        }
+        return data;
+    }
+
+    /**
+     * Find the element remove would return, dropping the replaced elements
+     * in front of it.
+     * @return the element, or null if empty.
+     */
+    @Override
+    public E peek() {
+        while (size > 0) {
+            ArrayDeque<E> bucket = buckets[min];
+            E data = bucket == null ? null : bucket.peekFirst();
+            if (data == null) {
+                min++;
+                continue;
+            }
+            if (queued != null && queued.get(key.apply(data)) != data) {
+                bucket.pollFirst();   // replaced by a lower priority element
+                entries--;
+                continue;
+            }
+            return data;
+        }
+        return null;
+    }
+
+    /**
+     * @return number of queued elements.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Test program: fill the queue in batches and empty it through peek,
+    // remove and drainTo, checking it gives the items back sorted
+    public static void main(String[] args) {
+        BucketQueue<Integer> queue = new BucketQueue<>(x -> x);
+        java.util.Random random = new java.util.Random(7);
+        java.util.List<Integer> added = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            java.util.List<Integer> batch = new java.util.ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--)
+                batch.add(random.nextInt(100));
+            queue.addAll(batch);
+            added.addAll(batch);
+        }
+        java.util.Collections.sort(added);
+        boolean ok = queue.size() == added.size();
+        java.util.List<Integer> taken = new java.util.ArrayList<>();
+        while (!queue.isEmpty()) {
+            Integer next = queue.peek();
+            ok &= next.equals(queue.remove());
+            taken.add(next);
+            queue.drainTo(taken, random.nextInt(10));
+        }
+        ok &= taken.equals(added) && queue.peek() == null && queue.size() == 0;
+        System.out.println("BucketQueue keeps its order through addAll, peek and drainTo: " + ok);
+    }
+}
@@ -0,0 +1,560 @@
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+// ConcurrentAVLTree class
+//
+// CONSTRUCTION: with no initializer (one stripe), or with the bounds
+//               splitting the items into stripes
+//
+// ******************PUBLIC OPERATIONS*********************
+// void insert( x )       --> Insert x
+// void remove( x )       --> Remove x
+// boolean contains( x )  --> Return true if x is present
+// Comparable findMin( )  --> Return smallest item, or null
+// Comparable findMax( )  --> Return largest item, or null
+// boolean isEmpty( )     --> Return true if empty; else false
+// ******************CONCURRENCY***************************
+// Readers take no locks: they walk the tree under optimistic stamps and
+// retry if a writer changed it meanwhile. Writers lock the one stripe
+// whose key range holds their item.
+
+/**
+ * AVL tree that many threads can read and write at once.
+ * The items are split by key range into stripes, each an independent AVL
+ * tree guarded by its own StampedLock: stripe i holds the items from
+ * bounds[i - 1] up to, but not including, bounds[i]. This is lock striping
+ * across trees, not locking of the nodes of one tree, so two writers wait
+ * for each other whenever their items fall in the same range. Items that
+ * compare equal always share a stripe.
+ * contains, findMin, findMax and isEmpty read without locking, validating
+ * their stamps afterwards, and only fall back to read locks if writers keep
+ * invalidating them. All four are atomic: findMin reads the stripes from the
+ * lowest range up until one is not empty, and returns only if none of the
+ * stripes it read changed meanwhile; findMax does the same from the top.
+ * Writers only run side by side if the bounds spread their items over
+ * several stripes. With no bounds there is one stripe, and writers take turns.
+ * Note that all "matching" is based on the compareTo method.
+ */
+public class ConcurrentAVLTree<T extends Comparable<? super T>> {
+    private static final int ALLOWED_IMBALANCE = 1;
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+    /** More steps than any AVL tree that fits in memory is tall; a longer walk saw a tree mid-rotation. */
+    private static final int MAX_STEPS = 128;
+
+    private final Stripe<T>[] stripes;
+    private final List<T> bounds;
+
+    /**
+     * Construct a tree with a single stripe, so writers take turns.
+     */
+    public ConcurrentAVLTree() {
+        this(List.of());
+    }
+
+    /**
+     * Construct a tree whose writers lock one of bounds.size() + 1 stripes.
+     * @param bounds increasing items, the smallest item of each stripe but the first;
+     * pick them so the items written most are spread evenly between them.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentAVLTree(List<? extends T> bounds) {
+        this.bounds = List.copyOf(bounds);
+        for (int i = 1; i < this.bounds.size(); i++)
+            if (this.bounds.get(i - 1).compareTo(this.bounds.get(i)) >= 0)
+                throw new IllegalArgumentException("Bounds out of order: " + this.bounds.get(i - 1)
+                        + " before " + this.bounds.get(i));
+        stripes = (Stripe<T>[]) new Stripe<?>[this.bounds.size() + 1];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new Stripe<>();
+    }
+
+    /**
+     * @param item the item to insert.
+     */
+    public void insert(T item) {
+        Stripe<T> stripe = stripe(item);
+        long stamp = stripe.lock.writeLock();
+        try {
+            stripe.root = insert(item, stripe.root);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove from the tree. Nothing is done if item is not found.
+     * @param item the item to remove.
+     */
+    public void remove(T item) {
+        Stripe<T> stripe = stripe(item);
+        long stamp = stripe.lock.writeLock();
+        try {
+            stripe.root = remove(item, stripe.root);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Find an item in the tree, without locking.
+     * @param item the item to search for.
+     * @return true if item is found.
+     */
+    public boolean contains(T item) {
+        Stripe<T> stripe = stripe(item);
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = stripe.lock.tryOptimisticRead();
+            if (stamp == 0)
+                continue;   // A writer holds the lock
+            int found = contains(item, stripe.root);
+            if (found >= 0 && stripe.lock.validate(stamp))
+                return found == 1;
+        }
+        long stamp = stripe.lock.readLock();
+        try {
+            return contains(item, stripe.root) == 1;
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Find the smallest item in the tree, without locking.
+     * @return smallest item or null if empty.
+     */
+    public T findMin() {
+        return findExtreme(true);
+    }
+
+    /**
+     * Find the largest item in the tree, without locking.
+     * @return the largest item or null if empty.
+     */
+    public T findMax() {
+        return findExtreme(false);
+    }
+
+    /**
+     * Test if the tree is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return findExtreme(true) == null;
+    }
+
+    /**
+     * @return the stripe whose range holds item: the one after the last bound no larger than item.
+     */
+    private Stripe<T> stripe(T item) {
+        int low = 0;
+        int high = bounds.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (item.compareTo(bounds.get(middle)) < 0)
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return stripes[low];
+    }
+
+    /**
+     * Internal method to read the smallest or largest item of the tree.
+     * Reads the stripes from one end until it finds one that is not empty;
+     * if none of the stripes read changed before the last stamp was checked,
+     * they all held what was read at the moment the last stamp was taken.
+     */
+    private T findExtreme(boolean smallest) {
+        int n = stripes.length;
+        long[] stamps = new long[n];
+        attempts:
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            T element = null;
+            int read = 0;
+            while (read < n) {
+                Stripe<T> stripe = stripes[smallest ? read : n - 1 - read];
+                long stamp = stripe.lock.tryOptimisticRead();
+                if (stamp == 0)
+                    continue attempts;   // A writer holds the lock
+                stamps[read++] = stamp;
+                AvlNode<T> node = findExtreme(stripe.root, smallest);
+                if (node == END)
+                    continue attempts;
+                if (node != null) {
+                    element = node.element;
+                    break;
+                }
+            }
+            boolean valid = true;
+            for (int i = 0; i < read && valid; i++)
+                valid = stripes[smallest ? i : n - 1 - i].lock.validate(stamps[i]);
+            if (valid)
+                return element;
+        }
+        int locked = 0;
+        try {
+            while (locked < n) {
+                Stripe<T> stripe = stripes[smallest ? locked : n - 1 - locked];
+                stamps[locked++] = stripe.lock.readLock();
+                AvlNode<T> node = findExtreme(stripe.root, smallest);
+                if (node != null)
+                    return node.element;
+            }
+            return null;
+        } finally {
+            for (int i = 0; i < locked; i++)
+                stripes[smallest ? i : n - 1 - i].lock.unlockRead(stamps[i]);
+        }
+    }
+
+    /**
+     * Internal method to find an item in a subtree that may be changing.
+     * @return 1 if found, 0 if not, or -1 if the walk went on too long.
+     */
+    private int contains(T item, AvlNode<T> node) {
+        for (int steps = 0; node != null; steps++) {
+            if (steps == MAX_STEPS)
+                return -1;
+            int compareResult = item.compareTo(node.element);
+
+            if (compareResult < 0)
+                node = node.left;
+            else if (compareResult > 0)
+                node = node.right;
+            else
+                return 1;    // Match
+        }
+        return 0;   // No match
+    }
+
+    /**
+     * Internal method to find the leftmost or rightmost node of a subtree that may be changing.
+     * @return the node, null if the subtree is empty, or END if the walk went on too long.
+     */
+    @SuppressWarnings("unchecked")
+    private AvlNode<T> findExtreme(AvlNode<T> node, boolean smallest) {
+        if (node == null)
+            return null;
+        for (int steps = 0; ; steps++) {
+            if (steps == MAX_STEPS)
+                return (AvlNode<T>) END;
+            AvlNode<T> next = smallest ? node.left : node.right;
+            if (next == null)
+                return node;
+            node = next;
+        }
+    }
+
+    /**
+     * Internal method to insert into a subtree. Duplicates are allowed.
+     * Called with the stripe's write lock held.
+     * @return the new root of the subtree.
+     */
+    private AvlNode<T> insert(T item, AvlNode<T> node) {
+        if (node == null)
+            return new AvlNode<>(item);
+
+        if (item.compareTo(node.element) < 0)
+            node.left = insert(item, node.left);
+        else
+            node.right = insert(item, node.right);
+
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     * Called with the stripe's write lock held.
+     * @return the new root of the subtree.
+     */
+    private AvlNode<T> remove(T item, AvlNode<T> node) {
+        if (node == null)
+            return node;   // Item not found; do nothing
+
+        int compareResult = item.compareTo(node.element);
+
+        if (compareResult < 0)
+            node.left = remove(item, node.left);
+        else if (compareResult > 0)
+            node.right = remove(item, node.right);
+        else if (node.left != null && node.right != null) // Two children
+        {
+            AvlNode<T> successor = node.right;
+            while (successor.left != null)
+                successor = successor.left;
+            node.element = successor.element;
+            node.right = remove(successor.element, node.right);
+        } else
+            node = (node.left != null) ? node.left : node.right;
+        return balance(node);
+    }
+
+    // Assume node is either balanced or within one of being balanced
+    private AvlNode<T> balance(AvlNode<T> node) {
+        if (node == null)
+            return node;
+
+        if (height(node.left) - height(node.right) > ALLOWED_IMBALANCE)
+            if (height(node.left.left) >= height(node.left.right))
+                node = rightRotation(node);
+            else
+                node = doubleRightRotation(node);
+        else if (height(node.right) - height(node.left) > ALLOWED_IMBALANCE)
+            if (height(node.right.right) >= height(node.right.left))
+                node = leftRotation(node);
+            else
+                node = doubleLeftRotation(node);
+
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        return node;
+    }
+
+    private int height(AvlNode<T> node) {
+        if (node == null) return -1;
+        return node.height;
+    }
+
+    private AvlNode<T> rightRotation(AvlNode<T> node) {
+        AvlNode<T> theLeft = node.left;
+        node.left = theLeft.right;
+        theLeft.right = node;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        theLeft.height = Math.max(height(theLeft.left), node.height) + 1;
+        return theLeft;
+    }
+
+    private AvlNode<T> leftRotation(AvlNode<T> node) {
+        AvlNode<T> theRight = node.right;
+        node.right = theRight.left;
+        theRight.left = node;
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        theRight.height = Math.max(height(theRight.right), node.height) + 1;
+        return theRight;
+    }
+
+    private AvlNode<T> doubleRightRotation(AvlNode<T> node) {
+        node.left = leftRotation(node.left);
+        return rightRotation(node);
+    }
+
+    private AvlNode<T> doubleLeftRotation(AvlNode<T> node) {
+        node.right = rightRotation(node.right);
+        return leftRotation(node);
+    }
+
+    /** Returned by a walk that gave up. */
+    private static final AvlNode<?> END = new AvlNode<>(null);
+
+    private static class Stripe<T> {
+        final StampedLock lock = new StampedLock();
+        volatile AvlNode<T> root;
+    }
+
+    private static class AvlNode<T> {
+        AvlNode(T theElement) {
+            element = theElement;
+            height = 0;
+        }
+
+        // Links are volatile so lock-free readers see nodes fully built
+        volatile T element;          // The data in the node
+        volatile AvlNode<T> left;    // Left child
+        volatile AvlNode<T> right;   // Right child
+        int height;                  // Height, only read by writers
+    }
+
+
+    // Stress check, then a scaling test: threads doing a mix of contains and
+    // insert/remove, against an AVLTree behind a single lock. Arguments: ms
+    // per run (default 300) and most threads (default the number of processors).
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 300;
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : processors;
+        stress();
+
+        int keys = 1 << 20;
+        List<Integer> bounds = new java.util.ArrayList<>();
+        for (int i = 1; i < 64; i++)
+            bounds.add(i * (keys / 64));
+        ConcurrentAVLTree<Integer> striped = new ConcurrentAVLTree<>(bounds);
+        ConcurrentAVLTree<Integer> single = new ConcurrentAVLTree<>();
+        AVLTree<Integer> locked = new AVLTree<>();
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < keys / 2; i++) {
+            int x = random.nextInt(keys);
+            striped.insert(x);
+            single.insert(x);
+            locked.insert(x);
+        }
+
+        // With fewer processors than threads the threads only take turns,
+        // so the columns can differ by lock overhead but not by parallelism
+        System.out.println(processors + " processors");
+        System.out.println("threads read% single-lock(ops/ms) one-stripe(ops/ms) 64-stripes(ops/ms)");
+        for (int readPercent : new int[]{100, 90, 50}) {
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                long lockedOps = run(threads, millis, readPercent, keys,
+                        x -> { synchronized (locked) { return locked.contains(x); } },
+                        x -> { synchronized (locked) { locked.insert(x); } },
+                        x -> { synchronized (locked) { locked.remove(x); } });
+                long singleOps = run(threads, millis, readPercent, keys, single::contains, single::insert, single::remove);
+                long stripedOps = run(threads, millis, readPercent, keys, striped::contains, striped::insert, striped::remove);
+                System.out.println(threads + " " + readPercent + "% " + lockedOps / millis + " "
+                        + singleOps / millis + " " + stripedOps / millis);
+            }
+        }
+    }
+
+    /**
+     * Four writers insert and remove keys of their own, spread over eight
+     * stripes, while a fifth moves a low token between -2 and -1 and a high
+     * one between range + 1000 and range + 1001, each pair in two stripes,
+     * inserting the new key before removing the old. Two readers check that
+     * keys nobody removes are always found and that findMin and findMax
+     * always return a token, which they would not if they combined stripes
+     * read at different moments. Afterwards every stripe must be a balanced
+     * tree within its range holding exactly the keys the writers left in.
+     */
+    private static void stress() throws InterruptedException {
+        int writers = 4;
+        int range = 20000;   // Writer w owns keys w, w + writers, w + 2 * writers, ... below range
+        List<Integer> bounds = new java.util.ArrayList<>(List.of(-1));
+        for (int x = range / 8; x <= range; x += range / 8)
+            bounds.add(x);
+        bounds.add(range + 1001);
+        ConcurrentAVLTree<Integer> tree = new ConcurrentAVLTree<>(bounds);
+        for (int x = range; x < range + 1000; x++)
+            tree.insert(x);   // Never removed
+        int[] tokens = {-2, range + 1001};
+        tree.insert(tokens[0]);
+        tree.insert(tokens[1]);
+        int[][] counts = new int[writers][range];
+        java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+        java.util.concurrent.atomic.LongAdder misses = new java.util.concurrent.atomic.LongAdder();
+
+        Thread[] threads = new Thread[writers + 3];
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            threads[w] = new Thread(() -> {
+                java.util.Random random = new java.util.Random(writer);
+                for (int i = 0; i < 200000; i++) {
+                    int x = random.nextInt(range / writers) * writers + writer;
+                    if (random.nextInt(3) > 0) {
+                        tree.insert(x);
+                        counts[writer][x]++;
+                    } else if (counts[writer][x] > 0) {
+                        tree.remove(x);
+                        counts[writer][x]--;
+                    }
+                }
+            });
+        }
+        threads[writers] = new Thread(() -> {
+            for (int i = 0; i < 100000; i++) {
+                int low = -3 - tokens[0];                  // -2 and -1 swap
+                tree.insert(low);
+                tree.remove(tokens[0]);
+                tokens[0] = low;
+                int high = 2 * range + 2001 - tokens[1];   // range + 1000 and range + 1001 swap
+                tree.insert(high);
+                tree.remove(tokens[1]);
+                tokens[1] = high;
+            }
+        });
+        for (int r = writers + 1; r < threads.length; r++) {
+            threads[r] = new Thread(() -> {
+                java.util.Random random = new java.util.Random();
+                while (!done.get()) {
+                    if (!tree.contains(range + random.nextInt(1000)))
+                        misses.increment();
+                    Integer min = tree.findMin();
+                    if (min == null || min < -2 || min > -1)
+                        misses.increment();
+                    Integer max = tree.findMax();
+                    if (max == null || max < range + 1000 || max > range + 1001)
+                        misses.increment();
+                }
+            });
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (int w = 0; w <= writers; w++)
+            threads[w].join();
+        done.set(true);
+        for (int r = writers + 1; r < threads.length; r++)
+            threads[r].join();
+
+        java.util.Map<Integer, Integer> expected = new java.util.HashMap<>();
+        for (int[] writerCounts : counts)
+            for (int x = 0; x < range; x++)
+                if (writerCounts[x] > 0)
+                    expected.put(x, writerCounts[x]);
+        for (int x = range; x < range + 1000; x++)
+            expected.put(x, 1);
+        expected.put(tokens[0], 1);
+        expected.put(tokens[1], 1);
+        java.util.Map<Integer, Integer> found = new java.util.HashMap<>();
+        boolean ok = true;
+        for (int i = 0; i < tree.stripes.length; i++) {
+            Integer low = i == 0 ? null : bounds.get(i - 1);
+            Integer high = i == bounds.size() ? null : bounds.get(i) - 1;
+            ok &= checkStripe(tree.stripes[i].root, low, high, found) >= -1;
+        }
+        ok &= found.equals(expected);
+        System.out.println((writers + 1) + " writers on " + tree.stripes.length + " stripes: "
+                + (ok ? "contents and balance as expected" : "WRONG contents or balance")
+                + ", " + misses.sum() + " bad lock-free reads");
+    }
+
+    /**
+     * Count the items of a stripe and check its order and balance.
+     * @return the height, or -2 if the subtree is out of order or out of balance.
+     */
+    private static int checkStripe(AvlNode<Integer> node, Integer low, Integer high,
+                                   java.util.Map<Integer, Integer> found) {
+        if (node == null)
+            return -1;
+        if ((low != null && node.element < low) || (high != null && node.element > high))
+            return -2;
+        found.merge(node.element, 1, Integer::sum);
+        int left = checkStripe(node.left, low, node.element, found);
+        int right = checkStripe(node.right, node.element, high, found);
+        if (left < -1 || right < -1 || Math.abs(left - right) > ALLOWED_IMBALANCE
+                || node.height != Math.max(left, right) + 1)
+            return -2;
+        return node.height;
+    }
+
+    private static long run(int threads, long millis, int readPercent, int keys,
+                            java.util.function.Predicate<Integer> contains,
+                            java.util.function.Consumer<Integer> insert,
+                            java.util.function.Consumer<Integer> remove) throws InterruptedException {
+        java.util.concurrent.atomic.LongAdder ops = new java.util.concurrent.atomic.LongAdder();
+        long end = System.nanoTime() + millis * 1_000_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                java.util.concurrent.ThreadLocalRandom random = java.util.concurrent.ThreadLocalRandom.current();
+                long done = 0;
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < 64; i++, done++) {
+                        int x = random.nextInt(keys);
+                        int roll = random.nextInt(100);
+                        if (roll < readPercent)
+                            contains.test(x);
+                        else if (roll % 2 == 0)
+                            insert.accept(x);
+                        else
+                            remove.accept(x);
+                    }
+                }
+                ops.add(done);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        return ops.sum();
+    }
+}
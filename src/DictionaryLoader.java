@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a dictionary of whitespace separated words into lists by word length.
+ * The file is memory mapped and split on whitespace bytes. Repeated words are
+ * found by comparing bytes in the mapped file, so a String is only made for
+ * the first copy of each word. Words keep the order of their first copy, and
+ * words of every length are kept.
+ * The file may be cut into chunks at whitespace and the chunks parsed in
+ * parallel; a chunk is never more than 1 GB, so larger files are always chunked.
+ */
+public class DictionaryLoader {
+    private static final long MAX_CHUNK = 1L << 30;
+    private static final int SCAN_BUFFER = 4096;
+
+    /**
+     * Read a dictionary on the calling thread.
+     * @param file the dictionary
+     * @return lists of words: list len - 1 holds the words of length len, as in LadderGameSolution.wordLists
+     * @throws IOException if the file cannot be read
+     */
+    public static ArrayList<String>[] load(Path file) throws IOException {
+        return load(file, 1);
+    }
+
+    /**
+     * Read a dictionary, parsing it in chunks on the common fork-join pool.
+     * @param file the dictionary
+     * @param chunks number of chunks to cut the file into; 1 to parse it on the calling thread
+     * @return lists of words: list len - 1 holds the words of length len, as in LadderGameSolution.wordLists
+     * @throws IOException if the file cannot be read
+     */
+    public static ArrayList<String>[] load(Path file, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long size = channel.size();
+            chunks = (int) Math.max(Math.max(chunks, 1), (size + MAX_CHUNK - 1) / MAX_CHUNK);
+            chunks = (int) Math.min(chunks, Math.max(size / SCAN_BUFFER, 1));
+
+            // Chunk i covers [bounds[i], bounds[i+1]); every bound but the ends is a whitespace byte
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = nextWhitespace(channel, Math.max(bounds[i - 1], size / chunks * i), size);
+            }
+
+            List<ArrayList<ArrayList<String>>> parsed = new ArrayList<>(chunks);
+            if (chunks == 1) {
+                parsed.add(parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)));
+            } else {
+                List<Callable<ArrayList<ArrayList<String>>>> tasks = new ArrayList<>(chunks);
+                for (int i = 0; i < chunks; i++) {
+                    long start = bounds[i];
+                    long end = bounds[i + 1];
+                    tasks.add(() -> parse(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+                }
+                for (Future<ArrayList<ArrayList<String>>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                    parsed.add(get(future));
+                }
+            }
+            return merge(parsed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted loading " + file, e);
+        }
+    }
+
+    /**
+     * Wait for a chunk, passing on the IOException that stopped it.
+     */
+    private static ArrayList<ArrayList<String>> get(Future<ArrayList<ArrayList<String>>> future)
+            throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Find the first whitespace byte at or after a position.
+     * @return its position, or size if there is none
+     */
+    private static long nextWhitespace(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (isWhitespace(buffer.get(i))) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0b;
+    }
+
+    /**
+     * Split one chunk into words, dropping the words it repeats.
+     * Distinct words are kept in an open addressing table of their positions
+     * in the chunk, so a repeat is recognized by comparing bytes.
+     * @return lists of the distinct words of the chunk by length, first copy first
+     */
+    private static ArrayList<ArrayList<String>> parse(MappedByteBuffer chunk) {
+        ArrayList<ArrayList<String>> lists = new ArrayList<>();
+        int size = chunk.limit();
+        int[] starts = new int[64];    // position of each distinct word
+        int[] lengths = new int[64];   // length in bytes of each distinct word
+        int[] table = new int[128];    // index + 1 of a distinct word, 0 for a free slot
+        int count = 0;
+
+        int i = 0;
+        while (i < size) {
+            while (i < size && isWhitespace(chunk.get(i))) {
+                i++;
+            }
+            int start = i;
+            int hash = 0;
+            while (i < size && !isWhitespace(chunk.get(i))) {
+                hash = 31 * hash + chunk.get(i);
+                i++;
+            }
+            int length = i - start;
+            if (length == 0) {
+                break;
+            }
+
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            boolean repeat = false;
+            while (table[slot] != 0) {
+                int word = table[slot] - 1;
+                if (lengths[word] == length && sameBytes(chunk, starts[word], start, length)) {
+                    repeat = true;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (repeat) {
+                continue;
+            }
+
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            starts[count] = start;
+            lengths[count] = length;
+            table[slot] = ++count;
+            if (count * 2 > table.length) {
+                table = rehash(table, chunk, starts, lengths, count);
+            }
+
+            byte[] bytes = new byte[length];
+            chunk.get(start, bytes);
+            String word = new String(bytes, StandardCharsets.UTF_8);
+            while (lists.size() < word.length()) {
+                lists.add(new ArrayList<>());
+            }
+            lists.get(word.length() - 1).add(word);
+        }
+        return lists;
+    }
+
+    private static boolean sameBytes(MappedByteBuffer chunk, int a, int b, int length) {
+        for (int k = 0; k < length; k++) {
+            if (chunk.get(a + k) != chunk.get(b + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spread the bits of a String style hash over the table index.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Double the table, putting every distinct word back in.
+     */
+    private static int[] rehash(int[] table, MappedByteBuffer chunk, int[] starts, int[] lengths, int count) {
+        int[] bigger = new int[table.length * 2];
+        int mask = bigger.length - 1;
+        for (int word = 0; word < count; word++) {
+            int hash = 0;
+            for (int k = 0; k < lengths[word]; k++) {
+                hash = 31 * hash + chunk.get(starts[word] + k);
+            }
+            int slot = mix(hash) & mask;
+            while (bigger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            bigger[slot] = word + 1;
+        }
+        return bigger;
+    }
+
+    /**
+     * Put the chunks' lists together in file order, dropping words an earlier
+     * chunk already had.
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<String>[] merge(List<ArrayList<ArrayList<String>>> parsed) {
+        int longest = 0;
+        for (ArrayList<ArrayList<String>> lists : parsed) {
+            longest = Math.max(longest, lists.size());
+        }
+        ArrayList<String>[] wordLists = (ArrayList<String>[]) new ArrayList<?>[longest];
+        for (int len = 0; len < longest; len++) {
+            wordLists[len] = new ArrayList<>();
+        }
+        HashSet<String> seen = parsed.size() > 1 ? new HashSet<>() : null;
+        for (ArrayList<ArrayList<String>> lists : parsed) {
+            for (int len = 0; len < lists.size(); len++) {
+                if (seen == null) {
+                    wordLists[len] = lists.get(len);
+                    continue;
+                }
+                for (String word : lists.get(len)) {
+                    if (seen.add(word)) {
+                        wordLists[len].add(word);
+                    }
+                }
+            }
+        }
+        return wordLists;
+    }
+
+    /**
+     * Time the loader against Scanner on a dictionary, and check the three
+     * ways of reading it agree. Pass the dictionary, default src/dictionary.txt,
+     * and how many copies of it to read as one file, default 1.
+     */
+    public static void main(String[] args) throws IOException {
+        Path dictionary = Paths.get(args.length > 0 ? args[0] : "src/dictionary.txt");
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Path file = dictionary;
+        if (copies > 1) {
+            file = Files.createTempFile("dictionary", ".txt");
+            byte[] bytes = Files.readAllBytes(dictionary);
+            for (int i = 0; i < copies; i++) {
+                Files.write(file, bytes, java.nio.file.StandardOpenOption.APPEND);
+                Files.write(file, new byte[]{'\n'}, java.nio.file.StandardOpenOption.APPEND);
+            }
+        }
+        int chunks = Runtime.getRuntime().availableProcessors() * 4;
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            ArrayList<ArrayList<String>> scanned = new ArrayList<>();
+            HashSet<String> seen = new HashSet<>();
+            try (Scanner reader = new Scanner(file.toFile())) {
+                while (reader.hasNext()) {
+                    String word = reader.next();
+                    if (seen.add(word)) {
+                        while (scanned.size() < word.length()) {
+                            scanned.add(new ArrayList<>());
+                        }
+                        scanned.get(word.length() - 1).add(word);
+                    }
+                }
+            }
+            long scannerTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            ArrayList<String>[] mapped = load(file);
+            long mappedTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            ArrayList<String>[] parallel = load(file, chunks);
+            long parallelTime = System.nanoTime() - start;
+
+            boolean same = Arrays.asList(mapped).equals(scanned) && Arrays.asList(parallel).equals(scanned);
+            System.out.println(Files.size(file) / 1024 + " KB, " + seen.size() + " words up to " + mapped.length
+                    + " letters: Scanner " + scannerTime / 1_000_000 + " ms, mapped " + mappedTime / 1_000_000
+                    + " ms, " + chunks + " chunks " + parallelTime / 1_000_000 + " ms"
+                    + (same ? "" : " (lists DIFFER)"));
+        }
+        if (file != dictionary) {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Array backed d-ary min heap, usable anywhere a Queue is.
+ * Equal elements leave in the order they were added, as they do from AVLTree.
+ * When built with a key function the heap holds at most one element per key:
+ * adding an element whose key is already queued keeps whichever of the two is smaller,
+ * moving it up in place (decrease-key) instead of queueing a duplicate.
+ */
+public class IndexedHeap<E extends Comparable<? super E>> implements Queue<E> {
+    private static final int DEFAULT_ARITY = 4;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int arity;
+    private final Function<? super E, ?> key;   // null when duplicates are allowed
+    private final HashMap<Object, Position> index; // position of the element queued for each key
+    private Object[] elements;
+    private long[] order;                       // arrival number of the element in each slot
+    private Position[] positions;               // position of the element in each slot, null without a key function
+    private int size;
+    private long arrivals;
+
+    /**
+     * Construct a 4-ary heap that allows duplicates.
+     */
+    public IndexedHeap() {
+        this(DEFAULT_ARITY, null);
+    }
+
+    /**
+     * Construct a 4-ary heap holding one element per key.
+     * @param key maps an element to its key, e.g. LadderInfo to its last word.
+     */
+    public IndexedHeap(Function<? super E, ?> key) {
+        this(DEFAULT_ARITY, key);
+    }
+
+    /**
+     * @param arity number of children of each node, at least 2.
+     * @param key maps an element to its key, or null to allow duplicates.
+     */
+    public IndexedHeap(int arity, Function<? super E, ?> key) {
+        if (arity < 2)
+            throw new IllegalArgumentException("arity " + arity);
+        this.arity = arity;
+        this.key = key;
+        index = key == null ? null : new HashMap<>();
+        elements = new Object[DEFAULT_CAPACITY];
+        order = new long[DEFAULT_CAPACITY];
+        positions = key == null ? null : new Position[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Add an element. With a key function, an element whose key is already
+     * queued replaces the queued one only if it is smaller.
+     * @param data the element to add.
+     */
+    @Override
+    public void add(E data) {
+        Position position = null;
+        if (index != null) {
+            Object k = key.apply(data);
+            position = index.get(k);
+            if (position != null) {
+                if (data.compareTo(elementAt(position.slot)) < 0) {
+                    elements[position.slot] = data;
+                    siftUp(position.slot);
+                }
+                return;
+            }
+            position = new Position();
+            index.put(k, position);
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+            if (positions != null)
+                positions = Arrays.copyOf(positions, size * 2);
+        }
+        elements[size] = data;
+        order[size] = arrivals++;
+        if (positions != null) {
+            positions[size] = position;
+            position.slot = size;
+        }
+        siftUp(size++);
+    }
+
+    /**
+     * Remove the smallest element.
+     * @return the smallest element, or null if empty.
+     */
+    @Override
+    public E remove() {
+        if (size == 0)
+            return null;
+        E min = elementAt(0);
+        if (index != null)
+            index.remove(key.apply(min));
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        elements[size] = null;
+        if (positions != null)
+            positions[size] = null;
+        return min;
+    }
+
+    /**
+     * Find the smallest element.
+     * @return the smallest element, or null if empty.
+     */
+    public E findMin() {
+        return size == 0 ? null : elementAt(0);
+    }
+
+    @Override
+    public E peek() {
+        return findMin();
+    }
+
+    /**
+     * @return number of queued elements.
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E elementAt(int slot) {
+        return (E) elements[slot];
+    }
+
+    private boolean less(int i, int j) {
+        int compareResult = elementAt(i).compareTo(elementAt(j));
+        return compareResult < 0 || (compareResult == 0 && order[i] < order[j]);
+    }
+
+    private void move(int from, int to) {
+        elements[to] = elements[from];
+        order[to] = order[from];
+        if (positions != null) {
+            positions[to] = positions[from];
+            positions[to].slot = to;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object element = elements[i];
+        long arrival = order[i];
+        Position position = positions == null ? null : positions[i];
+        move(j, i);
+        elements[j] = element;
+        order[j] = arrival;
+        if (position != null) {
+            positions[j] = position;
+            position.slot = j;
+        }
+    }
+
+    private void siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / arity;
+            if (!less(slot, parent))
+                break;
+            swap(slot, parent);
+            slot = parent;
+        }
+    }
+
+    private void siftDown(int slot) {
+        while (true) {
+            int first = slot * arity + 1;
+            if (first >= size)
+                break;
+            int smallest = first;
+            int last = Math.min(first + arity, size);
+            for (int child = first + 1; child < last; child++)
+                if (less(child, smallest))
+                    smallest = child;
+            if (!less(smallest, slot))
+                break;
+            swap(slot, smallest);
+            slot = smallest;
+        }
+    }
+
+    /**
+     * Slot of the element queued for one key. It moves with the element,
+     * so a swap updates it without looking the key up again.
+     */
+    private static final class Position {
+        int slot;
+    }
+
+    // Test program: check the heap keeps its order, with and without a key
+    // function. Timings against the other queues are in QueueBenchmark.
+    public static void main(String[] args) {
+        check(new IndexedHeap<>());
+        checkKeyed();
+    }
+
+    /**
+     * Fill a heap in batches and empty it through peek, remove and drainTo,
+     * checking it gives the items back sorted.
+     */
+    private static void check(IndexedHeap<Integer> queue) {
+        java.util.Random random = new java.util.Random(7);
+        java.util.List<Integer> added = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            java.util.List<Integer> batch = new java.util.ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--)
+                batch.add(random.nextInt(100));
+            queue.addAll(batch);
+            added.addAll(batch);
+        }
+        java.util.Collections.sort(added);
+        boolean ok = queue.size() == added.size();
+        java.util.List<Integer> taken = new java.util.ArrayList<>();
+        while (!queue.isEmpty()) {
+            Integer next = queue.peek();
+            ok &= next.equals(queue.remove());
+            taken.add(next);
+            queue.drainTo(taken, random.nextInt(10));
+        }
+        ok &= taken.equals(added) && queue.peek() == null && queue.size() == 0;
+        System.out.println("IndexedHeap keeps its order through addAll, peek and drainTo: " + ok);
+    }
+
+    /**
+     * Add random items keyed by their last two digits, removing now and then,
+     * checking the heap holds the smallest item added for each queued key.
+     */
+    private static void checkKeyed() {
+        IndexedHeap<Integer> queue = new IndexedHeap<>(x -> x % 100);
+        java.util.Map<Integer, Integer> smallest = new java.util.HashMap<>();
+        java.util.Random random = new java.util.Random(9);
+        boolean ok = true;
+        for (int i = 0; i < 20000; i++) {
+            if (random.nextInt(4) == 0 && !queue.isEmpty()) {
+                Integer min = queue.remove();
+                ok &= min.equals(java.util.Collections.min(smallest.values()));
+                smallest.remove(min % 100);
+            } else {
+                Integer x = random.nextInt(10000);
+                queue.add(x);
+                smallest.merge(x % 100, x, Math::min);
+            }
+            ok &= queue.size() == smallest.size();
+        }
+        java.util.List<Integer> expected = new java.util.ArrayList<>(smallest.values());
+        java.util.Collections.sort(expected);
+        java.util.List<Integer> taken = new java.util.ArrayList<>();
+        while (!queue.isEmpty())
+            taken.add(queue.remove());
+        ok &= taken.equals(expected);
+        System.out.println("keyed IndexedHeap keeps the smallest item of each key: " + ok);
+    }
+}
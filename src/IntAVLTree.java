@@ -0,0 +1,209 @@
+import java.util.Arrays;
+
+// IntAVLTree class
+//
+// CONSTRUCTION: with no initializer, or with an initial capacity
+//
+// ******************PUBLIC OPERATIONS*********************
+// void insert( x )       --> Insert x
+// void remove( x )       --> Remove x
+// boolean contains( x )  --> Return true if x is present
+// int findMin( )         --> Return smallest item
+// int findMax( )         --> Return largest item
+// int size( )            --> Return number of items
+// boolean isEmpty( )     --> Return true if empty; else false
+// void makeEmpty( )      --> Remove all items
+// ******************ERRORS********************************
+// findMin and findMax throw RuntimeException on an empty tree
+
+/**
+ * AVL tree of int keys, compared directly with no boxing.
+ * The slots, free list and balancing are AbstractArrayAVLTree's, shared with
+ * ArrayAVLTree; this class holds keys[slot] and does the comparisons.
+ */
+public class IntAVLTree extends AbstractArrayAVLTree {
+    private int[] keys;   // Key of each slot
+
+    /**
+     * Construct the tree.
+     */
+    public IntAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of items to make room for up front.
+     */
+    public IntAVLTree(int capacity) {
+        super(capacity);
+        keys = new int[left.length];
+    }
+
+    /**
+     * @param item the item to insert.
+     */
+    public void insert(int item) {
+        root = insert(item, root);
+    }
+
+    /**
+     * Remove from the tree. Nothing is done if item is not found.
+     * @param item the item to remove.
+     */
+    public void remove(int item) {
+        root = remove(item, root);
+    }
+
+    /**
+     * Find an item in the tree.
+     * @param item the item to search for.
+     * @return true if item is found.
+     */
+    public boolean contains(int item) {
+        int node = root;
+        while (node != NIL) {
+            int compareResult = Integer.compare(item, keys[node]);
+
+            if (compareResult < 0)
+                node = left[node];
+            else if (compareResult > 0)
+                node = right[node];
+            else
+                return true;    // Match
+        }
+        return false;   // No match
+    }
+
+    /**
+     * Find the smallest item in the tree.
+     * @return smallest item.
+     */
+    public int findMin() {
+        return keys[leftmost()];
+    }
+
+    /**
+     * Find the largest item in the tree.
+     * @return the largest item.
+     */
+    public int findMax() {
+        return keys[rightmost()];
+    }
+
+    @Override
+    void growKeys(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    void copyKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    /**
+     * Internal method to insert into a subtree. Duplicates are allowed.
+     * The arrays may grow, so a child is stored only after the call returns.
+     * @return the new root of the subtree.
+     */
+    private int insert(int item, int node) {
+        if (node == NIL) {
+            node = newNode();
+            keys[node] = item;
+            return node;
+        }
+
+        if (Integer.compare(item, keys[node]) < 0) {
+            int child = insert(item, left[node]);
+            left[node] = child;
+        } else {
+            int child = insert(item, right[node]);
+            right[node] = child;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     * @return the new root of the subtree.
+     */
+    private int remove(int item, int node) {
+        if (node == NIL)
+            return node;   // Item not found; do nothing
+
+        int compareResult = Integer.compare(item, keys[node]);
+
+        if (compareResult < 0)
+            left[node] = remove(item, left[node]);
+        else if (compareResult > 0)
+            right[node] = remove(item, right[node]);
+        else
+            return removeNode(node);
+        return balance(node);
+    }
+
+    // Test program: insert, contains and remove throughput for n random int
+    // keys, in AVLTree through compareTo, AVLTree with Integer::compare and
+    // IntAVLTree. AVLTree is first used with String, Dwarf and LadderInfo
+    // items, as in the ladder game, so its compareTo call site is megamorphic.
+    // The first rounds run while the JIT is still compiling and are not
+    // reported. Pass n, default 500000.
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        java.util.Random random = new java.util.Random(13);
+        int[] keys = new int[n];
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt();
+            boxed[i] = keys[i];
+        }
+
+        AVLTree<String> words = new AVLTree<>();
+        AVLTree<Dwarf> dwarfs = new AVLTree<>();
+        AVLTree<LadderInfo> ladders = new AVLTree<>();
+        for (int i = 0; i < 200_000; i++) {
+            words.insert(Integer.toString(random.nextInt(50_000)));
+            dwarfs.insert(new Dwarf(Integer.toString(random.nextInt(50_000))));
+            ladders.insert(new LadderInfo("word", 0, null, random.nextInt(50)));
+            if (i % 2 == 0)
+                words.pollMin();
+            ladders.pollMin();
+        }
+
+        int warmUpRounds = 3;
+        for (int round = 0; round < warmUpRounds + 3; round++) {
+            long natural = time(new AVLTree<>(), boxed);
+            long comparator = time(new AVLTree<>(Integer::compare), boxed);
+            long start = System.nanoTime();
+            IntAVLTree primitive = new IntAVLTree();
+            for (int x : keys)
+                primitive.insert(x);
+            int found = 0;
+            for (int x : keys)
+                if (primitive.contains(x))
+                    found++;
+            for (int x : keys)
+                primitive.remove(x);
+            long direct = System.nanoTime() - start;
+            if (round < warmUpRounds && found == n && primitive.isEmpty())
+                continue;
+            System.out.println("ns per key for insert, contains and remove: compareTo " + natural / n
+                    + ", Integer::compare " + comparator / n + ", IntAVLTree " + direct / n
+                    + (found == n && primitive.isEmpty() ? "" : " (WRONG)"));
+        }
+    }
+
+    private static long time(AVLTree<Integer> tree, Integer[] keys) {
+        long start = System.nanoTime();
+        for (Integer x : keys)
+            tree.insert(x);
+        int found = 0;
+        for (Integer x : keys)
+            if (tree.contains(x))
+                found++;
+        for (Integer x : keys)
+            tree.remove(x);
+        if (found != keys.length || !tree.isEmpty())
+            System.out.println("\n\n***********************OOPS!!");
+        return System.nanoTime() - start;
+    }
+}
@@ -1,17 +1,25 @@
-import java.util.Scanner;
 import java.util.Random;
-import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 
 
 /**
  * This class holds all of the functions needed for the ladder game to run successfully.
+ * Every search it runs is added to LadderMetrics.
  */
 public class LadderGameSolution {
-    static int MaxWordSize = 15;
-    ArrayList<String>[] wordLists;  // Array of ArrayLists of words of each length.
+    ArrayList<String>[] wordLists;  // Array of ArrayLists of words of each length: wordLists[len-1] has length len.
+    HashMap<String, ArrayList<String>> neighborIndex;  // Words grouped by wildcard pattern, e.g. "h*t".
+    LadderGraph[] graphs;  // Int id form of each wordLists bucket, built on first use.
     Random random;
     private boolean done = false;
+    boolean bidirectional = false;  // Search from both ends of the ladder at once.
+    boolean packed = false;  // Search over int word ids instead of Strings.
     MyLinkedList<LadderInfo> solutionQueue;
 
     AVLTree<LadderInfo> priorityQueue;
@@ -25,32 +33,63 @@ public class LadderGameSolution {
      * @param filename Name of file containing dictionary of legal words
      */
     public LadderGameSolution(String filename) {
+        this(filename, 1);
+    }
+
+    /**
+     * Divide the dictionary into wordLists of different length words, parsing it in parallel chunks
+     * @param filename Name of file containing dictionary of legal words
+     * @param chunks Number of chunks to parse in parallel, 1 to read the file on this thread
+     */
+    public LadderGameSolution(String filename, int chunks) {
         random = new Random();
-        populateWordList(filename);
+        populateWordList(filename, chunks);
         solutionQueue = new MyLinkedList<>();
         priorityQueue = new AVLTree<>();
 
     }
 
-    private void populateWordList(String filename) {
-        wordLists = new ArrayList[MaxWordSize +1];
-        for (int i = 0; i < MaxWordSize; i++) {
-            wordLists[i] = new ArrayList<>();
-        }
-        File file = new File(filename);
+    private void populateWordList(String filename, int chunks) {
         try {
-            Scanner reader = new Scanner(file);
-            while (reader.hasNext()) {
-                String word = reader.next();
-                if (word.length() < MaxWordSize) {
-                    wordLists[word.length()-1].add(word);
+            wordLists = DictionaryLoader.load(Paths.get(filename), chunks);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read dictionary " + filename, e);
+        }
+        buildNeighborIndex();
+        graphs = new LadderGraph[wordLists.length + 1];
+    }
+
+    /**
+     * Group the words of every length by wildcard pattern, so that all the words
+     * one letter away from a word are found by looking up its patterns.
+     * The index is built once and shared by every call to play.
+     */
+    private void buildNeighborIndex() {
+        neighborIndex = new HashMap<>();
+        for (ArrayList<String> list : wordLists) {
+            if (list == null) {
+                continue;
+            }
+            for (String word : list) {
+                for (int i = 0; i < word.length(); i++) {
+                    neighborIndex.computeIfAbsent(wildcard(word, i), k -> new ArrayList<>()).add(word);
                 }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
+    /**
+     * Replace one letter of a word with '*'.
+     * @param word word to build the pattern from
+     * @param i position of the letter to replace
+     * @return wildcard pattern of word
+     */
+    private static String wildcard(String word, int i) {
+        char[] letters = word.toCharArray();
+        letters[i] = '*';
+        return new String(letters);
+    }
+
 
     /**
      * make sure a and b are legal words before calling FindLadder
@@ -60,7 +99,7 @@ public class LadderGameSolution {
     public void play(String a, String b) {
         // Reset the done
         done = false;
-        if (a.length() >= MaxWordSize) {
+        if (a.length() > wordLists.length) {
             return;
         }
 
@@ -71,71 +110,329 @@ public class LadderGameSolution {
             return;
         }
 //        findLadder(a, b);
+        if (packed) {
+            System.out.println("Packed Brute Force:");
+            findPackedLadder(a, b, false);
+            System.out.println("Packed A* Search:");
+            findPackedLadder(a, b, true);
+            return;
+        }
+        if (bidirectional) {
+            System.out.println("Bidirectional Brute Force:");
+            findLadder(a, b, new ChunkedQueue<>(), new ChunkedQueue<>(), false);
+            System.out.println("Bidirectional A* Search:");
+            findLadder(a, b, new AVLTree<>(), new AVLTree<>(), true);
+            return;
+        }
         System.out.println("Brute Force:");
-        findLadder(a, b, new MyLinkedList<>(), false);
+        findLadder(a, b, new ChunkedQueue<>(), false);
         System.out.println("A* Search:");
         findLadder(a,b, new AVLTree<>(), true);
 
     }
 
-    public void findLadder(String a, String b, Queue<LadderInfo> queue, boolean isAStar) {
-        ArrayList<String> listAVL = wordLists[a.length()-1];
-        ArrayList<String> cloneList = (ArrayList<String>) listAVL.clone();
-
+    /**
+     * Search for a ladder from a to b and print it.
+     * Brute force marks a word visited when it is queued, so each word is queued once.
+     * A* marks a word visited when it is expanded, and queues a word again when a
+     * shorter ladder reaches it before then. A queue built with a key function,
+     * such as IndexedHeap or BucketQueue keyed by lastWord, replaces the longer
+     * ladder in place (decrease-key); any other queue holds both and the longer
+     * one is skipped when it is removed.
+     * @param a starting word of word ladder
+     * @param b ending word of word ladder
+     * @param queue empty frontier, first in first out for brute force, a priority queue for A*
+     * @param isAStar order the frontier by totalCost, instead of first in first out
+     * @return the ladder found, or null if there is none
+     */
+    public LadderInfo findLadder(String a, String b, Queue<LadderInfo> queue, boolean isAStar) {
         System.out.println("Seeking an A* solution from " + a + " to " + b);
 
         // Verify that provided words are valid
-        if (a.length() >= MaxWordSize || b.length() >= MaxWordSize) {
+        if (a.length() > wordLists.length || b.length() > wordLists.length) {
             System.out.println("No solution: Words exceed maximum length");
-            return;
+            return null;
         }
 
         if (a.length() != b.length() || !wordLists[a.length()-1].contains(a) || !wordLists[b.length()-1].contains(b)) {
             System.out.println("No solution: Invalid input words");
-            return;
+            return null;
         }
 
         done = false;
         int count = 0;
+        long startNanos = LadderMetrics.ENABLED ? System.nanoTime() : 0;
+        long cpuStart = LadderMetrics.ENABLED ? LadderMetrics.cpuTime() : -1;
+        int expanded = 0;
+        int peakFrontier = 0;
+        int costCalls = 1;  // getCost of the first ladder
+        int requeued = 0;   // A* ladders queued for a word that already had a longer one queued
+        HashSet<String> visited = new HashSet<>();
+        HashMap<String, Integer> fewestMoves = new HashMap<>();  // A*: shortest ladder queued so far to each word
+        ArrayList<LadderInfo> batch = new ArrayList<>();  // ladders made by one expansion, added together
 
         // Initialize the priority queue with the initial ladder
-        queue.add(new LadderInfo(a, 0, a, getCost(a, b)));
-        cloneList.remove(a);
+        queue.add(new LadderInfo(a, 0, null, getCost(a, b)));
+        if (isAStar) {
+            fewestMoves.put(a, 0);
+        } else {
+            visited.add(a);
+        }
         while (!queue.isEmpty()) {
+            peakFrontier = Math.max(peakFrontier, queue.size());
             LadderInfo currLadder = queue.remove();
-            // Remove processed words from the clone list
+            if (isAStar && !visited.add(currLadder.lastWord)) {
+                continue;   // a shorter ladder to this word has been expanded
+            }
+            expanded++;
             String lastWord = currLadder.lastWord;
 
-            ArrayList<String> removeList = new ArrayList<>();
-            for (String newWord : cloneList) {
-                if (getCost(lastWord, newWord) == 1) {
+            // Only words sharing a wildcard pattern with lastWord are one letter away
+            for (int i = 0; i < lastWord.length(); i++) {
+                for (String newWord : neighborIndex.get(wildcard(lastWord, i))) {
                     int moves = currLadder.moves + 1;
+                    if (isAStar) {
+                        // The heuristic changes by at most one a move, so an expanded word
+                        // already has its fewest moves and is skipped here too
+                        Integer fewest = fewestMoves.get(newWord);
+                        if (fewest != null && fewest <= moves) {
+                            continue;
+                        }
+                        if (fewest != null) {
+                            requeued++;
+                        }
+                        fewestMoves.put(newWord, moves);
+                    } else if (!visited.add(newWord)) {
+                        continue;
+                    }
 
                     // Extend the current ladder
                     LadderInfo newLadder;
                     if (isAStar) {
-                        newLadder = new LadderInfo(newWord, moves, currLadder.ladder + " " + newWord, totalCost(newWord, b, moves));
+                        newLadder = new LadderInfo(newWord, moves, currLadder, totalCost(newWord, b, moves));
+                        costCalls++;
                     } else {
-                        newLadder = new LadderInfo(newWord, moves, currLadder.ladder + " " + newWord);
+                        newLadder = new LadderInfo(newWord, moves, currLadder);
                     }
                     if (newWord.equals(b)) {
                         done = true;
-                        System.out.println("[ " + newLadder.ladder + "] total enqueues " + count);
-                        return;
+                        recordSearch(a, b, isAStar, expanded, count, peakFrontier, costCalls, startNanos, cpuStart);
+                        System.out.println("[ " + newLadder.getLadder() + "] total enqueues " + count
+                                + (requeued > 0 ? ", " + requeued + " shortened" : ""));
+                        return newLadder;
                     }
 
-                    // Append this ladder to the priority queue
-                    removeList.add(newWord);
-                    queue.add(newLadder);
+                    batch.add(newLadder);
                     count++;
                 }
             }
-            cloneList.removeAll(removeList);
+            // Append this expansion's ladders to the priority queue in one go
+            queue.addAll(batch);
+            batch.clear();
         }
 
+        recordSearch(a, b, isAStar, expanded, count, peakFrontier, costCalls, startNanos, cpuStart);
         if (!done) {
             System.out.println("No ladder found from " + a + " to " + b);
         }
+        return null;
+    }
+
+    /**
+     * Same search as findLadder, run over the int ids of a LadderGraph.
+     * @param a starting word of word ladder
+     * @param b ending word of word ladder
+     * @param isAStar order the frontier by totalCost, instead of first in first out
+     */
+    public void findPackedLadder(String a, String b, boolean isAStar) {
+        System.out.println("Seeking a packed solution from " + a + " to " + b);
+
+        if (a.length() > wordLists.length || b.length() > wordLists.length || a.length() != b.length()) {
+            System.out.println("No solution: Invalid input words");
+            return;
+        }
+        LadderGraph graph = getGraph(a.length());
+        int from = graph.id(a);
+        int to = graph.id(b);
+        if (from < 0 || to < 0) {
+            System.out.println("No solution: Invalid input words");
+            return;
+        }
+
+        long startNanos = LadderMetrics.ENABLED ? System.nanoTime() : 0;
+        long cpuStart = LadderMetrics.ENABLED ? LadderMetrics.cpuTime() : -1;
+        done = graph.findLadder(from, to, isAStar) >= 0;
+        if (LadderMetrics.ENABLED) {
+            long elapsed = System.nanoTime() - startNanos;
+            long cpu = cpuStart < 0 ? -1 : LadderMetrics.cpuTime() - cpuStart;
+            LadderMetrics.INSTANCE.record(a, b, isAStar, graph.getStats(elapsed, cpu));
+        }
+        if (done) {
+            System.out.println("[ " + graph.getLadder(to) + "] total enqueues " + graph.getEnqueues());
+        } else {
+            System.out.println("No ladder found from " + a + " to " + b);
+        }
+    }
+
+    /**
+     * @param len length of the words
+     * @return the LadderGraph of words of length len
+     */
+    LadderGraph getGraph(int len) {
+        if (graphs[len] == null) {
+            graphs[len] = new LadderGraph(wordLists[len - 1], neighborIndex);
+        }
+        return graphs[len];
+    }
+
+    /**
+     * Bidirectional search: one frontier grows from a towards b and the other
+     * from b towards a, taking turns, until they meet at a common word.
+     * The brute force search keeps going until no shorter ladder can exist, so its
+     * ladder is a shortest one. The A* search stops at the first meeting, just as
+     * the one way A* stops as soon as b is reached.
+     * @param a starting word of word ladder
+     * @param b ending word of word ladder
+     * @param queue frontier growing from a
+     * @param backQueue frontier growing from b
+     * @param isAStar order both frontiers by totalCost
+     */
+    public void findLadder(String a, String b, Queue<LadderInfo> queue, Queue<LadderInfo> backQueue, boolean isAStar) {
+        System.out.println("Seeking a bidirectional solution from " + a + " to " + b);
+
+        if (a.length() > wordLists.length || b.length() > wordLists.length) {
+            System.out.println("No solution: Words exceed maximum length");
+            return;
+        }
+
+        if (a.length() != b.length() || !wordLists[a.length()-1].contains(a) || !wordLists[b.length()-1].contains(b)) {
+            System.out.println("No solution: Invalid input words");
+            return;
+        }
+
+        done = false;
+        int count = 0;
+        long startNanos = LadderMetrics.ENABLED ? System.nanoTime() : 0;
+        long cpuStart = LadderMetrics.ENABLED ? LadderMetrics.cpuTime() : -1;
+        if (a.equals(b)) {
+            recordSearch(a, b, isAStar, 0, count, 0, 0, startNanos, cpuStart);
+            System.out.println("[ " + a + "] total enqueues " + count);
+            return;
+        }
+        int expanded = 0;
+        int peakFrontier = 0;
+        int costCalls = 2;  // getCost of the first ladder from each end
+
+        // Ladders reaching each word: from a (ladder starts at a) and from b (ladder starts at b)
+        HashMap<String, LadderInfo> fromA = new HashMap<>();
+        HashMap<String, LadderInfo> fromB = new HashMap<>();
+        LadderInfo start = new LadderInfo(a, 0, null, getCost(a, b));
+        LadderInfo end = new LadderInfo(b, 0, null, getCost(b, a));
+        fromA.put(a, start);
+        fromB.put(b, end);
+        queue.add(start);
+        backQueue.add(end);
+
+        ArrayList<LadderInfo> batch = new ArrayList<>();  // ladders made by one expansion, added together
+        LadderInfo bestA = null;  // Best meeting found so far, as seen from each side
+        LadderInfo bestB = null;
+        int bestMoves = Integer.MAX_VALUE;
+        int lastMovesA = 0;
+        int lastMovesB = 0;
+        boolean forward = true;
+        while (!queue.isEmpty() && !backQueue.isEmpty()) {
+            Queue<LadderInfo> current = forward ? queue : backQueue;
+            HashMap<String, LadderInfo> mine = forward ? fromA : fromB;
+            HashMap<String, LadderInfo> other = forward ? fromB : fromA;
+            String target = forward ? b : a;
+
+            peakFrontier = Math.max(peakFrontier, queue.size() + backQueue.size());
+            LadderInfo currLadder = current.remove();
+            expanded++;
+            if (forward) {
+                lastMovesA = currLadder.moves;
+            } else {
+                lastMovesB = currLadder.moves;
+            }
+            // Every ladder still to be found is at least this long
+            if (lastMovesA + lastMovesB >= bestMoves) {
+                break;
+            }
+
+            String lastWord = currLadder.lastWord;
+            for (int i = 0; i < lastWord.length(); i++) {
+                for (String newWord : neighborIndex.get(wildcard(lastWord, i))) {
+                    if (mine.containsKey(newWord)) {
+                        continue;
+                    }
+                    int moves = currLadder.moves + 1;
+
+                    LadderInfo newLadder;
+                    if (isAStar) {
+                        newLadder = new LadderInfo(newWord, moves, currLadder, totalCost(newWord, target, moves));
+                        costCalls++;
+                    } else {
+                        newLadder = new LadderInfo(newWord, moves, currLadder);
+                    }
+                    mine.put(newWord, newLadder);
+
+                    LadderInfo meet = other.get(newWord);
+                    if (meet != null && moves + meet.moves < bestMoves) {
+                        bestMoves = moves + meet.moves;
+                        bestA = forward ? newLadder : meet;
+                        bestB = forward ? meet : newLadder;
+                    }
+
+                    batch.add(newLadder);
+                    count++;
+                }
+            }
+            current.addAll(batch);
+            batch.clear();
+
+            if (isAStar && bestA != null) {
+                break;
+            }
+            forward = !forward;
+        }
+
+        recordSearch(a, b, isAStar, expanded, count, peakFrontier, costCalls, startNanos, cpuStart);
+        if (bestA != null) {
+            done = true;
+            System.out.println("[ " + joinLadders(bestA, bestB) + "] total enqueues " + count);
+        } else {
+            System.out.println("No ladder found from " + a + " to " + b);
+        }
+    }
+
+    /**
+     * Add a search to LadderMetrics, unless metrics are switched off.
+     * @param startNanos System.nanoTime when the search began
+     * @param cpuStart CPU time of the thread when the search began, -1 if it cannot be measured
+     */
+    private static void recordSearch(String a, String b, boolean isAStar, int expanded, int enqueued,
+                                     int peakFrontier, int costCalls, long startNanos, long cpuStart) {
+        if (!LadderMetrics.ENABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        long cpu = cpuStart < 0 ? -1 : LadderMetrics.cpuTime() - cpuStart;
+        LadderMetrics.INSTANCE.record(a, b, isAStar,
+                new SearchStats(expanded, enqueued, peakFrontier, costCalls, elapsed, cpu));
+    }
+
+    /**
+     * Join two ladders that end on the same word.
+     * @param fromA ladder starting at a
+     * @param fromB ladder starting at b
+     * @return the words of the ladder from a to b
+     */
+    private String joinLadders(LadderInfo fromA, LadderInfo fromB) {
+        StringBuilder joined = new StringBuilder(fromA.getLadder());
+        for (LadderInfo step = fromB.previous; step != null; step = step.previous) {
+            joined.append(' ').append(step.lastWord);
+        }
+        return joined.toString();
     }
 
     /**
@@ -167,7 +464,7 @@ public class LadderGameSolution {
 
     public void play(int len) {
         done = false;
-        if (len >= MaxWordSize || wordLists[len].isEmpty()) {
+        if (len >= wordLists.length || wordLists[len].isEmpty()) {
             return;
         }
         ArrayList<String> list = wordLists[len];
@@ -193,5 +490,33 @@ public class LadderGameSolution {
         g.play("rums", "numb");
         g.play("irk", "yuk");
 
+        g.bidirectional = true;
+        g.play("unabated", "notified");
+        g.play("cock", "numb");
+
+        g.bidirectional = false;
+        g.packed = true;
+        g.play("kiss", "woof");
+        g.play("cock", "numb");
+        g.play("irk", "yuk");
+        g.packed = false;
+
+        // The same search on every Queue. First in first out queues take the
+        // ladders in the same order, so they must find the very same ladder.
+        // A* on each priority queue must find one as short: the keyed ones
+        // shorten a queued ladder in place, AVLTree queues the shorter one too
+        LadderInfo shortest = g.findLadder("cock", "numb", new ChunkedQueue<>(), false);
+        boolean ok = shortest != null;
+        for (Queue<LadderInfo> queue : List.of(new MyLinkedList<LadderInfo>(), new SpscQueue<LadderInfo>(1 << 16))) {
+            LadderInfo found = g.findLadder("cock", "numb", queue, false);
+            ok &= found != null && found.getLadder().equals(shortest.getLadder());
+        }
+        for (Queue<LadderInfo> queue : List.of(new AVLTree<LadderInfo>(),
+                new IndexedHeap<LadderInfo>(ladder -> ladder.lastWord),
+                new BucketQueue<LadderInfo>(ladder -> ladder.priority, ladder -> ladder.lastWord))) {
+            LadderInfo found = g.findLadder("cock", "numb", queue, true);
+            ok &= found != null && found.moves == shortest.moves;
+        }
+        System.out.println("every Queue finds the shortest ladder, FIFO queues the same one: " + ok);
     }
 }
@@ -0,0 +1,423 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The words of one length, interned to dense int ids, with the one letter
+ * neighbors of every word precomputed.
+ * Searches run over ids only: letters are kept in one char array, visited words
+ * in a bitset and the frontier in primitive arrays that are reused from one
+ * search to the next, so a search allocates next to nothing.
+ * The connected components are found when the graph is built, so a search
+ * between words that are not linked fails at once. Optionally the distances
+ * from a few landmark words are stored too, and give A* a lower bound on the
+ * moves still needed (the ALT heuristic) that is much tighter than getCost.
+ * The graph never changes once built. Each thread searches with its own
+ * state, so threads may search one graph at the same time; getEnqueues,
+ * getStats and getLadder report on the calling thread's last search.
+ */
+public class LadderGraph {
+    private final int length;            // length of every word in the graph
+    private final String[] words;        // word of each id
+    private final HashMap<String, Integer> ids;
+    private final char[] letters;        // letters of id i are at [i*length, (i+1)*length)
+    private final int[] firstNeighbor;   // neighbors of id i are neighbors[firstNeighbor[i] .. firstNeighbor[i+1])
+    private final int[] neighbors;
+    private final int[] component;       // connected component of each id
+    private final short[][] landmarkDistance;  // moves from landmark l to id i, -1 if not linked
+    private final ThreadLocal<Search> searches = ThreadLocal.withInitial(Search::new);
+
+    private static final int ID_BITS = 24;
+    private static final int ORDER_BITS = 24;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final long ORDER_MASK = (1L << ORDER_BITS) - 1;
+
+    /**
+     * Intern the words and link every pair one letter apart.
+     * @param wordList words, all of the same length
+     * @param neighborIndex words grouped by wildcard pattern, as built by LadderGameSolution
+     */
+    public LadderGraph(ArrayList<String> wordList, HashMap<String, ArrayList<String>> neighborIndex) {
+        this(wordList, neighborIndex, 0);
+    }
+
+    /**
+     * Intern the words, link every pair one letter apart and store the moves
+     * from a number of landmark words to every word.
+     * @param wordList words, all of the same length
+     * @param neighborIndex words grouped by wildcard pattern, as built by LadderGameSolution
+     * @param landmarks number of landmark words, 0 to search with getCost alone
+     */
+    public LadderGraph(ArrayList<String> wordList, HashMap<String, ArrayList<String>> neighborIndex, int landmarks) {
+        int n = wordList.size();
+        if (n > ID_MASK) {
+            throw new IllegalArgumentException("Too many words: " + n);
+        }
+        length = n == 0 ? 0 : wordList.get(0).length();
+        words = wordList.toArray(new String[0]);
+        ids = new HashMap<>(n * 2);
+        letters = new char[n * length];
+        for (int id = 0; id < n; id++) {
+            ids.put(words[id], id);
+            words[id].getChars(0, length, letters, id * length);
+        }
+
+        // Neighbors come out in the same order as a wildcard index lookup
+        firstNeighbor = new int[n + 1];
+        int[] adjacent = new int[n];
+        int count = 0;
+        for (int id = 0; id < n; id++) {
+            firstNeighbor[id] = count;
+            char[] pattern = words[id].toCharArray();
+            for (int j = 0; j < length; j++) {
+                char letter = pattern[j];
+                pattern[j] = '*';
+                for (String word : neighborIndex.get(new String(pattern))) {
+                    int other = ids.get(word);
+                    if (other == id) {
+                        continue;
+                    }
+                    if (count == adjacent.length) {
+                        adjacent = Arrays.copyOf(adjacent, adjacent.length * 2);
+                    }
+                    adjacent[count++] = other;
+                }
+                pattern[j] = letter;
+            }
+        }
+        firstNeighbor[n] = count;
+        neighbors = Arrays.copyOf(adjacent, count);
+
+        component = new int[n];
+        Arrays.fill(component, -1);
+        int[] queue = new int[n];
+        int components = 0;
+        for (int id = 0; id < n; id++) {
+            if (component[id] < 0) {
+                component[id] = components;
+                int head = 0;
+                int tail = 0;
+                queue[tail++] = id;
+                while (head < tail) {
+                    int current = queue[head++];
+                    for (int k = firstNeighbor[current]; k < firstNeighbor[current + 1]; k++) {
+                        if (component[neighbors[k]] < 0) {
+                            component[neighbors[k]] = components;
+                            queue[tail++] = neighbors[k];
+                        }
+                    }
+                }
+                components++;
+            }
+        }
+        landmarkDistance = chooseLandmarks(Math.min(landmarks, n), components, queue);
+    }
+
+    /**
+     * Pick landmarks in the largest component, farthest first: each new landmark
+     * is the word with the most moves to the nearest landmark already picked,
+     * starting from the end of a search out of the component. Smaller
+     * components get no landmark and are searched with getCost alone.
+     * @param landmarks number of landmarks to pick
+     * @param components number of components
+     * @param queue scratch array of one int per word
+     * @return the moves from each landmark to every word
+     */
+    private short[][] chooseLandmarks(int landmarks, int components, int[] queue) {
+        short[][] distance = new short[landmarks][];
+        if (landmarks == 0) {
+            return distance;
+        }
+        int n = words.length;
+        int[] componentSize = new int[components];
+        int largest = 0;
+        for (int id = 0; id < n; id++) {
+            if (++componentSize[component[id]] > componentSize[component[largest]]) {
+                largest = id;
+            }
+        }
+        int[] nearest = new int[n];  // moves to the nearest landmark picked so far; MAX_VALUE before the first, -1 if not linked
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        int landmark = farthest(largest, new short[n], queue);
+        for (int l = 0; l < landmarks; l++) {
+            distance[l] = new short[n];
+            farthest(landmark, distance[l], queue);
+            nearest[landmark] = 0;
+            for (int id = 0; id < n; id++) {
+                nearest[id] = Math.min(nearest[id], distance[l][id]);
+                if (nearest[id] > nearest[landmark]) {
+                    landmark = id;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Breadth first search out of one word.
+     * @param from id of the word to search from
+     * @param distance filled with the moves to each word, -1 if not linked
+     * @param queue scratch array of one int per word
+     * @return id of the last word reached, one of the farthest
+     */
+    private int farthest(int from, short[] distance, int[] queue) {
+        Arrays.fill(distance, (short) -1);
+        distance[from] = 0;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int k = firstNeighbor[current]; k < firstNeighbor[current + 1]; k++) {
+                int next = neighbors[k];
+                if (distance[next] < 0) {
+                    distance[next] = (short) (distance[current] + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return queue[tail - 1];
+    }
+
+    /**
+     * Find the id of a word.
+     * @param word the word to look up
+     * @return id of word, or -1 if it is not in the graph
+     */
+    public int id(String word) {
+        Integer id = ids.get(word);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id id of a word in the graph
+     * @return the word with that id
+     */
+    public String word(int id) {
+        return words[id];
+    }
+
+    /**
+     * @return number of words in the graph
+     */
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * @param a id of a word
+     * @param b id of a word
+     * @return true if a ladder links the two words
+     */
+    public boolean isLinked(int a, int b) {
+        return component[a] == component[b];
+    }
+
+    /**
+     * Lower bound on the moves from a to b: the letters that differ, or,
+     * by the triangle inequality, the difference of their moves from any
+     * landmark that reaches both, whichever is larger.
+     */
+    public int estimate(int a, int b) {
+        int bound = getCost(a, b);
+        for (short[] distance : landmarkDistance) {
+            if (distance[a] >= 0 && distance[b] >= 0) {
+                bound = Math.max(bound, Math.abs(distance[a] - distance[b]));
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Number of letters that differ between two words.
+     */
+    public int getCost(int a, int b) {
+        int cost = 0;
+        int i = a * length;
+        int j = b * length;
+        for (int k = 0; k < length; k++) {
+            if (letters[i + k] != letters[j + k]) {
+                cost++;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Search for a ladder from id a to id b. The search stops as soon as b is
+     * reached, as LadderGameSolution.findLadder does, and fails at once if
+     * the two words are in different components.
+     * @param a id of the starting word
+     * @param b id of the ending word
+     * @param isAStar order the frontier by moves plus estimate to b, instead of first in first out
+     * @return number of moves in the ladder found, or -1 if there is none
+     */
+    public int findLadder(int a, int b, boolean isAStar) {
+        return searches.get().findLadder(a, b, isAStar);
+    }
+
+    /**
+     * @return number of words added to the frontier by the calling thread's last search
+     */
+    public int getEnqueues() {
+        return searches.get().enqueues;
+    }
+
+    /**
+     * Counts of the work done by the calling thread's last search.
+     * @param wallNanos elapsed time of the search, as measured by the caller
+     * @param cpuNanos CPU time of the search, as measured by the caller
+     */
+    public SearchStats getStats(long wallNanos, long cpuNanos) {
+        Search search = searches.get();
+        return new SearchStats(search.expanded, search.enqueues, search.peakFrontier, search.costCalls,
+                wallNanos, cpuNanos);
+    }
+
+    /**
+     * Words of the ladder the calling thread's last search found to id b.
+     * @param b id of the ending word of that search
+     * @return the words separated by single spaces
+     */
+    public String getLadder(int b) {
+        return searches.get().getLadder(b);
+    }
+
+    /**
+     * State of one thread's searches, reused from one search to the next.
+     */
+    private class Search {
+        private final long[] visited = new long[(words.length + 63) >>> 6];  // bitset of ids already reached
+        private final int[] parent = new int[words.length];  // id each reached word was reached from, -1 for the start
+        private final int[] moves = new int[words.length];   // number of moves to reach each reached word
+        private final int[] fifo = new int[words.length];    // brute force frontier, each id is added at most once
+        private long[] heap = new long[16];  // A* frontier: priority, arrival order and id packed in a long
+        private int heapSize;
+        private int enqueues;
+        private int expanded;         // ids taken off the frontier
+        private int peakFrontier;     // most ids on the frontier at once
+        private int costCalls;        // calls of getCost, made once by each call of estimate
+
+        /**
+         * LadderGraph.findLadder, run with this state.
+         */
+        int findLadder(int a, int b, boolean isAStar) {
+            Arrays.fill(visited, 0);
+            enqueues = 0;
+            expanded = 0;
+            peakFrontier = 0;
+            costCalls = 0;
+            heapSize = 0;
+            int head = 0;
+            int tail = 0;
+
+            markVisited(a);
+            parent[a] = -1;
+            moves[a] = 0;
+            if (a == b) {
+                return 0;
+            }
+            if (!isLinked(a, b)) {
+                return -1;
+            }
+            if (isAStar) {
+                push(estimate(a, b), a);
+                costCalls++;
+            } else {
+                fifo[tail++] = a;
+            }
+
+            while (isAStar ? heapSize > 0 : head < tail) {
+                peakFrontier = Math.max(peakFrontier, isAStar ? heapSize : tail - head);
+                int current = isAStar ? pop() : fifo[head++];
+                expanded++;
+                int nextMoves = moves[current] + 1;
+                for (int k = firstNeighbor[current]; k < firstNeighbor[current + 1]; k++) {
+                    int next = neighbors[k];
+                    if (isVisited(next)) {
+                        continue;
+                    }
+                    markVisited(next);
+                    parent[next] = current;
+                    moves[next] = nextMoves;
+                    if (next == b) {
+                        return nextMoves;
+                    }
+                    if (isAStar) {
+                        push(nextMoves + estimate(next, b), next);
+                        costCalls++;
+                    } else {
+                        fifo[tail++] = next;
+                    }
+                    enqueues++;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * LadderGraph.getLadder, for the last search run with this state.
+         */
+        String getLadder(int b) {
+            String[] path = new String[moves[b] + 1];
+            for (int id = b, i = path.length - 1; id != -1; id = parent[id], i--) {
+                path[i] = words[id];
+            }
+            return String.join(" ", path);
+        }
+
+        private boolean isVisited(int id) {
+            return (visited[id >>> 6] & (1L << id)) != 0;
+        }
+
+        private void markVisited(int id) {
+            visited[id >>> 6] |= 1L << id;
+        }
+
+        /**
+         * Add an id to the A* frontier. Equal priorities leave in the order they
+         * arrived, as they do from AVLTree.
+         */
+        private void push(int priority, int id) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+            }
+            long key = ((long) priority << (ID_BITS + ORDER_BITS)) | ((enqueues & ORDER_MASK) << ID_BITS) | id;
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >>> 1;
+                if (heap[up] <= key) {
+                    break;
+                }
+                heap[i] = heap[up];
+                i = up;
+            }
+            heap[i] = key;
+        }
+
+        /**
+         * Remove the id with the smallest priority from the A* frontier.
+         */
+        private int pop() {
+            long top = heap[0];
+            long key = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (key <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = key;
+            return (int) (top & ID_MASK);
+        }
+    }
+}
@@ -3,26 +3,40 @@ import java.util.ArrayList;
 /**
  * This class creates WordInfo objects which allows the program
  * to keep track of words, their ladder, and number of moves previous to the word.
+ * The ladder is not stored as a string: each LadderInfo points at the LadderInfo it
+ * was extended from, and the words are only put together when the ladder is asked for.
  */
 public class LadderInfo implements Comparable<LadderInfo> {
     public int priority;
-    public String lastWord;   // last word of ladder
-    public int moves;         // number of moves in ladder
-    public String ladder;     // series of words in current word ladder
+    public String lastWord;      // last word of ladder
+    public int moves;            // number of moves in ladder
+    public LadderInfo previous;  // ladder this one extends, null for the first word
 
-    public LadderInfo(String word, int moves, String ladder,int priority){
+    public LadderInfo(String word, int moves, LadderInfo previous, int priority){
         this.lastWord = word;
         this.moves = moves;
-        this.ladder = ladder;
+        this.previous = previous;
         this.priority = priority;
 
     }
-    public LadderInfo(String word, int moves, String ladder) {
+    public LadderInfo(String word, int moves, LadderInfo previous) {
         this.lastWord = word;
         this.moves = moves;
-        this.ladder = ladder;
+        this.previous = previous;
     }
 
+    /**
+     * Series of words in the current word ladder, first word first.
+     * @return the words separated by single spaces
+     */
+    public String getLadder() {
+        String[] words = new String[moves + 1];
+        int i = moves;
+        for (LadderInfo step = this; step != null; step = step.previous) {
+            words[i--] = step.lastWord;
+        }
+        return String.join(" ", words);
+    }
 
     @Override
     public int compareTo(LadderInfo other) {
@@ -30,10 +44,9 @@ public class LadderInfo implements Comparable<LadderInfo> {
         return Integer.compare(this.priority, other.priority);
     }
     public String toString2(){
-       return "Word " + lastWord    + " Moves " +moves  + " Ladder ["+ ladder +"]";
+       return "Word " + lastWord    + " Moves " +moves  + " Ladder ["+ getLadder() +"]";
     }
     public String toString(){
-        return "  ["+ ladder +"]";
+        return "  ["+ getLadder() +"]";
     }
 }
-
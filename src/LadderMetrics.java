@@ -0,0 +1,249 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Totals over the searches every LadderSolver and LadderGameSolution.findLadder
+ * runs, and over the queries a LadderSolver answers from its cache, kept in
+ * counters that threads update without locking, and published through JMX as
+ * AVLTree:type=LadderMetrics. A search slower than the slow query threshold,
+ * 10 ms unless changed, is counted as slow, and the slowest one is kept
+ * with its stats so it can be looked at later.
+ * Run with -Dladder.metrics=false to switch them off; solvers then neither
+ * record searches nor read the thread's CPU time.
+ */
+public class LadderMetrics implements LadderMetricsMBean {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ladder.metrics", "true"));
+    public static final LadderMetrics INSTANCE = new LadderMetrics();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheHitNanos = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAccumulator peakFrontier = new LongAccumulator(Math::max, 0);
+    private final LongAdder costCalls = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+    private volatile long slowQueryNanos = 10_000_000;
+    private volatile long slowestNanos = -1;
+    private volatile String slowest;
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName("AVLTree:type=LadderMetrics"));
+            } catch (JMException e) {
+                System.err.println("LadderMetrics not published through JMX: " + e);
+            }
+        }
+    }
+
+    private LadderMetrics() {
+    }
+
+    /**
+     * Add one search to the totals.
+     * @param result the answer, with the stats of the search that found it
+     */
+    public void record(LadderResult result, boolean isAStar) {
+        record(result.source, result.dest, isAStar, result.stats);
+    }
+
+    /**
+     * Add one search to the totals.
+     * @param source first word asked for
+     * @param dest last word asked for
+     * @param stats work done by the search
+     */
+    public void record(String source, String dest, boolean isAStar, SearchStats stats) {
+        searches.increment();
+        expanded.add(stats.expanded);
+        enqueued.add(stats.enqueued);
+        peakFrontier.accumulate(stats.peakFrontier);
+        costCalls.add(stats.costCalls);
+        wallNanos.add(stats.wallNanos);
+        if (stats.cpuNanos > 0) {
+            cpuNanos.add(stats.cpuNanos);
+        }
+        if (stats.wallNanos > slowQueryNanos) {
+            slowQueries.increment();
+        }
+        if (stats.wallNanos > slowestNanos) {
+            synchronized (this) {
+                if (stats.wallNanos > slowestNanos) {
+                    slowestNanos = stats.wallNanos;
+                    slowest = source + " to " + dest + (isAStar ? " (A*): " : ": ") + stats;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add one query answered from a cache, without a search.
+     * @param nanos time taken to look the answer up
+     */
+    public void recordCacheHit(long nanos) {
+        cacheHits.increment();
+        cacheHitNanos.add(nanos);
+    }
+
+    /**
+     * @return CPU time used by the calling thread, or -1 if the JVM cannot measure it
+     */
+    public static long cpuTime() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    @Override
+    public long getQueries() {
+        return searches.sum() + cacheHits.sum();
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheHitNanos() {
+        return cacheHitNanos.sum();
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        return expanded.sum();
+    }
+
+    @Override
+    public long getNodesEnqueued() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getPeakFrontier() {
+        return peakFrontier.get();
+    }
+
+    @Override
+    public long getCostCalls() {
+        return costCalls.sum();
+    }
+
+    @Override
+    public long getWallNanos() {
+        return wallNanos.sum();
+    }
+
+    @Override
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    @Override
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public long getSlowQueryNanos() {
+        return slowQueryNanos;
+    }
+
+    @Override
+    public void setSlowQueryNanos(long nanos) {
+        slowQueryNanos = nanos;
+    }
+
+    @Override
+    public String getSlowestQuery() {
+        return slowest;
+    }
+
+    @Override
+    public long getSlowestQueryNanos() {
+        return slowestNanos;
+    }
+
+    @Override
+    public synchronized void reset() {
+        searches.reset();
+        cacheHits.reset();
+        cacheHitNanos.reset();
+        expanded.reset();
+        enqueued.reset();
+        peakFrontier.reset();
+        costCalls.reset();
+        wallNanos.reset();
+        cpuNanos.reset();
+        slowQueries.reset();
+        slowestNanos = -1;
+        slowest = null;
+    }
+
+    // Test program: answer the ladders from LadderGameSolution.main with a
+    // caching LadderSolver, twice so the second round comes from the cache,
+    // and once more with findLadder, then read the totals and the AVLTree
+    // counters back through JMX.
+    public static void main(String[] args) throws JMException {
+        String[] source = {"irk", "hit", "toes", "oops", "toes",  "ride", "happily", "slow", "stone", "biff", "unabated", "basket"};
+        String[] dest = {"yuk", "hog", "tied", "tots", "tied", "ands", "angrily", "fast", "money", "axal", "notified", "doughy"};
+
+        LadderGameSolution game = new LadderGameSolution("src/dictionary.txt");
+        LadderSolver solver = new LadderSolver(game, 0, 100);
+        for (boolean isAStar : new boolean[]{false, true}) {
+            for (int i = 0; i < source.length; i++) {
+                LadderResult result = solver.solve(source[i], dest[i], isAStar);
+                System.out.println(source[i] + " to " + dest[i] + (isAStar ? " A*: " : ": ") + result.stats);
+            }
+        }
+        java.io.PrintStream out = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+        for (int i = 0; i < source.length; i++) {
+            solver.solve(source[i], dest[i], true);
+            game.findLadder(source[i], dest[i], new AVLTree<>(), true);
+        }
+        System.setOut(out);
+        AVLTree<Integer> tree = new AVLTree<>();
+        for (int i = 0; i < 100_000; i++)
+            tree.insert(i * 7919 % 100_003);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName ladder = new ObjectName("AVLTree:type=LadderMetrics");
+        ObjectName avl = new ObjectName("AVLTree:type=AVLTreeMetrics");
+        if (!ENABLED || !AVLTreeMetrics.ENABLED) {
+            System.out.println("metrics switched off");
+            return;
+        }
+        for (String name : new String[]{"Queries", "Searches", "CacheHits", "CacheHitNanos", "NodesExpanded",
+                "NodesEnqueued", "PeakFrontier", "CostCalls", "WallNanos", "CpuNanos", "SlowQueries", "SlowestQuery"}) {
+            System.out.println(name + " = " + server.getAttribute(ladder, name));
+        }
+        for (String name : new String[]{"RightRotations", "LeftRotations", "DoubleRightRotations",
+                "DoubleLeftRotations", "MaxHeight"}) {
+            System.out.println(name + " = " + server.getAttribute(avl, name));
+        }
+        java.util.Set<String> pairs = new java.util.HashSet<>();
+        for (int i = 0; i < source.length; i++)
+            pairs.add(source[i] + " " + dest[i]);
+        // Each mode searches each pair once; repeats, and the third round, come from the cache
+        long searches = 2L * pairs.size() + source.length;
+        boolean ok = (Long) server.getAttribute(ladder, "Queries") == 4L * source.length
+                && (Long) server.getAttribute(ladder, "Searches") == searches
+                && (Long) server.getAttribute(ladder, "CacheHits") == 4L * source.length - searches
+                && (Long) server.getAttribute(avl, "MaxHeight") <= 1.44 * Math.log(tree.size() + 2) / Math.log(2);
+        System.out.println("totals agree with the queries, the cache and the AVL height bound: " + ok);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Totals over every search recorded by LadderMetrics, as published through JMX.
+ */
+public interface LadderMetricsMBean {
+    /**
+     * @return number of queries answered, by a search or from a cache.
+     */
+    long getQueries();
+
+    long getSearches();
+
+    long getCacheHits();
+
+    /**
+     * @return total time spent looking up the answers found in a cache.
+     */
+    long getCacheHitNanos();
+
+    long getNodesExpanded();
+
+    long getNodesEnqueued();
+
+    /**
+     * @return largest frontier of any one search.
+     */
+    long getPeakFrontier();
+
+    /**
+     * @return number of words compared letter by letter with the target by getCost.
+     */
+    long getCostCalls();
+
+    long getWallNanos();
+
+    long getCpuNanos();
+
+    /**
+     * @return number of searches that took longer than the slow query threshold.
+     */
+    long getSlowQueries();
+
+    long getSlowQueryNanos();
+
+    void setSlowQueryNanos(long nanos);
+
+    /**
+     * @return the slowest search as "source to dest (A*): stats", or null if none has been recorded.
+     */
+    String getSlowestQuery();
+
+    long getSlowestQueryNanos();
+
+    void reset();
+}
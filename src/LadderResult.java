@@ -0,0 +1,51 @@
+/**
+ * Outcome of one ladder query answered by LadderSolver.
+ */
+public class LadderResult {
+    public final String source;      // first word asked for
+    public final String dest;        // last word asked for
+    public final String ladder;      // words of the ladder separated by single spaces, null if there is none
+    public final int moves;          // number of moves in the ladder, -1 if there is none
+    public final int enqueues;       // number of words added to the frontier by the search
+    public final long elapsedNanos;  // time taken to answer the query
+    public final boolean cached;     // true if answered from an earlier search instead of a new one
+    public final SearchStats stats;  // work done by the search, null if there was no search or metrics are off
+
+    public LadderResult(String source, String dest, String ladder, int moves, int enqueues, long elapsedNanos) {
+        this(source, dest, ladder, moves, enqueues, elapsedNanos, false);
+    }
+
+    public LadderResult(String source, String dest, String ladder, int moves, int enqueues, long elapsedNanos,
+                        boolean cached) {
+        this(source, dest, ladder, moves, enqueues, elapsedNanos, cached, null);
+    }
+
+    public LadderResult(String source, String dest, String ladder, int moves, int enqueues, long elapsedNanos,
+                        boolean cached, SearchStats stats) {
+        this.source = source;
+        this.dest = dest;
+        this.ladder = ladder;
+        this.moves = moves;
+        this.enqueues = enqueues;
+        this.elapsedNanos = elapsedNanos;
+        this.cached = cached;
+        this.stats = stats;
+    }
+
+    /**
+     * @return true if a ladder was found
+     */
+    public boolean found() {
+        return ladder != null;
+    }
+
+    /**
+     * Same text play prints for a search.
+     */
+    public String toString() {
+        if (!found()) {
+            return "No ladder found from " + source + " to " + dest;
+        }
+        return "[ " + ladder + "] total enqueues " + enqueues;
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Answers ladder queries from many threads at once.
+ * The dictionary is read once and every word length is turned into a LadderGraph
+ * up front. The graphs never change after the constructor, every search keeps
+ * its state in the calling thread and the cache is synchronized, so one solver
+ * can be shared by any number of threads. Answers come back as LadderResult
+ * objects instead of being printed.
+ * Words that no ladder links are found from the graphs' components without a
+ * search. A solver may also keep landmark distances for A* and remember the
+ * answers to recent queries, so repeated queries are not searched again.
+ * Every search is added to LadderMetrics, and its stats kept on its result;
+ * answers found in the cache are counted there as cache hits.
+ */
+public class LadderSolver {
+    private final LadderGraph[] graphs;  // graphs[len] holds the words of length len
+    private final Map<Query, LadderResult> cache;  // recent answers, least recently used first; null for none
+
+    /**
+     * @param filename Name of file containing dictionary of legal words
+     */
+    public LadderSolver(String filename) {
+        this(new LadderGameSolution(filename));
+    }
+
+    /**
+     * Share the dictionary already read by a game.
+     * @param game game holding the dictionary
+     */
+    public LadderSolver(LadderGameSolution game) {
+        this(game, 0, 0);
+    }
+
+    /**
+     * Use the dictionary already read by a game, with A* guided by landmarks
+     * and a cache of recent answers.
+     * @param game game holding the dictionary
+     * @param landmarks number of landmark words per length, 0 to guide A* by getCost alone
+     * @param cacheSize number of answers to remember, 0 for no cache
+     */
+    public LadderSolver(LadderGameSolution game, int landmarks, int cacheSize) {
+        graphs = new LadderGraph[game.wordLists.length + 1];
+        for (int len = 1; len < graphs.length; len++) {
+            graphs[len] = landmarks == 0 ? game.getGraph(len)
+                    : new LadderGraph(game.wordLists[len - 1], game.neighborIndex, landmarks);
+        }
+        if (cacheSize == 0) {
+            cache = null;
+        } else {
+            cache = Collections.synchronizedMap(new LinkedHashMap<Query, LadderResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Query, LadderResult> eldest) {
+                    return size() > cacheSize;
+                }
+            });
+        }
+    }
+
+    /**
+     * Find a ladder from a to b. Safe to call from any thread.
+     * @param a starting word of word ladder
+     * @param b ending word of word ladder
+     * @param isAStar order the frontier by moves plus LadderGraph.estimate, instead of first in first out:
+     *                the letters still different, or the landmark bound if the solver has landmarks and it is larger
+     * @return the ladder found, or a result with no ladder if a or b is not a word or they are not linked
+     */
+    public LadderResult solve(String a, String b, boolean isAStar) {
+        if (cache == null) {
+            return search(a, b, isAStar);
+        }
+        long start = System.nanoTime();
+        Query key = new Query(a, b, isAStar);
+        LadderResult result = cache.get(key);
+        if (result != null) {
+            long elapsed = System.nanoTime() - start;
+            if (LadderMetrics.ENABLED) {
+                LadderMetrics.INSTANCE.recordCacheHit(elapsed);
+            }
+            return new LadderResult(a, b, result.ladder, result.moves, result.enqueues, elapsed, true);
+        }
+        result = search(a, b, isAStar);
+        cache.put(key, result);
+        return result;
+    }
+
+    /** Cache key: one query, with its search mode. */
+    private record Query(String a, String b, boolean isAStar) {
+    }
+
+    /**
+     * Answer a query with a new search.
+     */
+    private LadderResult search(String a, String b, boolean isAStar) {
+        long start = System.nanoTime();
+        int len = a.length();
+        if (len == 0 || len >= graphs.length || len != b.length()) {
+            return new LadderResult(a, b, null, -1, 0, System.nanoTime() - start);
+        }
+        LadderGraph graph = graphs[len];
+        int from = graph.id(a);
+        int to = graph.id(b);
+        if (from < 0 || to < 0) {
+            return new LadderResult(a, b, null, -1, 0, System.nanoTime() - start);
+        }
+        if (!LadderMetrics.ENABLED) {
+            int moves = graph.findLadder(from, to, isAStar);
+            String ladder = moves < 0 ? null : graph.getLadder(to);
+            return new LadderResult(a, b, ladder, moves, graph.getEnqueues(), System.nanoTime() - start);
+        }
+        long cpuStart = LadderMetrics.cpuTime();
+        int moves = graph.findLadder(from, to, isAStar);
+        String ladder = moves < 0 ? null : graph.getLadder(to);
+        long elapsed = System.nanoTime() - start;
+        long cpu = cpuStart < 0 ? -1 : LadderMetrics.cpuTime() - cpuStart;
+        LadderResult result = new LadderResult(a, b, ladder, moves, graph.getEnqueues(), elapsed, false,
+                graph.getStats(elapsed, cpu));
+        LadderMetrics.INSTANCE.record(result, isAStar);
+        return result;
+    }
+
+    /**
+     * Answer a batch of queries in parallel on the common fork-join pool.
+     * @param sources starting word of each query
+     * @param dests ending word of each query
+     * @param isAStar search with A* instead of brute force
+     * @return one result per query, in the order asked
+     */
+    public List<LadderResult> solveAll(String[] sources, String[] dests, boolean isAStar) throws InterruptedException {
+        return solveAll(sources, dests, isAStar, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Answer a batch of queries in parallel, one task per query.
+     * @param sources starting word of each query
+     * @param dests ending word of each query
+     * @param isAStar search with A* instead of brute force
+     * @param executor runs the tasks, e.g. a ForkJoinPool or a thread per task executor
+     * @return one result per query, in the order asked
+     */
+    public List<LadderResult> solveAll(String[] sources, String[] dests, boolean isAStar,
+                                       ExecutorService executor) throws InterruptedException {
+        if (sources.length != dests.length) {
+            throw new IllegalArgumentException(sources.length + " sources but " + dests.length + " dests");
+        }
+        List<Callable<LadderResult>> tasks = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            String a = sources[i];
+            String b = dests[i];
+            tasks.add(() -> solve(a, b, isAStar));
+        }
+        List<LadderResult> results = new ArrayList<>(tasks.size());
+        for (Future<LadderResult> future : executor.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Answer the ladders from LadderGameSolution.main as one batch, then time
+     * a batch of random queries one at a time against the same batch in parallel.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String[] source = {"irk", "hit", "toes", "oops", "toes",  "ride", "happily", "slow", "stone", "biff", "unabated", "basket"};
+        String[] dest = {"yuk", "hog", "tied", "tots", "tied", "ands", "angrily", "fast", "money", "axal", "notified", "doughy"};
+
+        LadderGameSolution game = new LadderGameSolution("src/dictionary.txt");
+        LadderSolver solver = new LadderSolver(game);
+        for (LadderResult result : solver.solveAll(source, dest, true)) {
+            System.out.println(result.source + " to " + result.dest + ": " + result
+                    + " in " + result.elapsedNanos / 1_000 + " us");
+        }
+
+        int n = 20_000;
+        Random random = new Random(19);
+        String[] sources = new String[n];
+        String[] dests = new String[n];
+        for (int i = 0; i < n; i++) {
+            ArrayList<String> words = game.wordLists[2 + random.nextInt(4)];
+            sources[i] = words.get(random.nextInt(words.size()));
+            dests[i] = words.get(random.nextInt(words.size()));
+        }
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            List<LadderResult> one = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                one.add(solver.solve(sources[i], dests[i], true));
+            }
+            long oneTime = System.nanoTime() - start;
+            start = System.nanoTime();
+            List<LadderResult> all = solver.solveAll(sources, dests, true);
+            long allTime = System.nanoTime() - start;
+            int same = 0;
+            for (int i = 0; i < n; i++) {
+                if (one.get(i).moves == all.get(i).moves && one.get(i).enqueues == all.get(i).enqueues) {
+                    same++;
+                }
+            }
+            System.out.println(n + " random A* queries: " + n * 1_000_000_000L / oneTime + " per second on one thread, "
+                    + n * 1_000_000_000L / allTime + " per second on " + ForkJoinPool.getCommonPoolParallelism()
+                    + " pool threads; " + same + " results agree");
+        }
+
+        // Repeated traffic: 20000 queries drawn from 2000 pairs, a quarter of them not linked
+        int distinct = 2_000;
+        String[] repeatedSources = new String[n];
+        String[] repeatedDests = new String[n];
+        for (int i = 0; i < n; i++) {
+            int pair = random.nextInt(distinct);
+            repeatedSources[i] = sources[pair];
+            repeatedDests[i] = dests[pair];
+        }
+        LadderSolver plain = new LadderSolver(new LadderGameSolution("src/dictionary.txt"));
+        LadderSolver guided = new LadderSolver(game, 16, 0);
+        LadderSolver cached = new LadderSolver(game, 16, 4_096);
+        for (int round = 0; round < 3; round++) {
+            StringBuilder line = new StringBuilder(n + " repeated A* queries:");
+            for (LadderSolver each : List.of(plain, guided, cached)) {
+                long start = System.nanoTime();
+                long enqueues = 0;
+                int unlinked = 0;
+                for (int i = 0; i < n; i++) {
+                    LadderResult result = each.solve(repeatedSources[i], repeatedDests[i], true);
+                    if (!result.cached) {
+                        enqueues += result.enqueues;
+                    }
+                    if (!result.found()) {
+                        unlinked++;
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                line.append(each == plain ? " getCost " : each == guided ? ", landmarks " : ", landmarks and cache ")
+                        .append(elapsed / n / 1_000).append(" us and ").append(enqueues / n)
+                        .append(" enqueues per query (").append(unlinked).append(" not linked)");
+            }
+            System.out.println(line);
+        }
+    }
+}
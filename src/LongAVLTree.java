@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+// LongAVLTree class
+//
+// CONSTRUCTION: with no initializer, or with an initial capacity
+//
+// ******************PUBLIC OPERATIONS*********************
+// void insert( x )       --> Insert x
+// void remove( x )       --> Remove x
+// boolean contains( x )  --> Return true if x is present
+// long findMin( )         --> Return smallest item
+// long findMax( )         --> Return largest item
+// int size( )            --> Return number of items
+// boolean isEmpty( )     --> Return true if empty; else false
+// void makeEmpty( )      --> Remove all items
+// ******************ERRORS********************************
+// findMin and findMax throw RuntimeException on an empty tree
+
+/**
+ * AVL tree of long keys, compared directly with no boxing.
+ * The slots, free list and balancing are AbstractArrayAVLTree's, shared with
+ * ArrayAVLTree; this class holds keys[slot] and does the comparisons.
+ */
+public class LongAVLTree extends AbstractArrayAVLTree {
+    private long[] keys;   // Key of each slot
+
+    /**
+     * Construct the tree.
+     */
+    public LongAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of items to make room for up front.
+     */
+    public LongAVLTree(int capacity) {
+        super(capacity);
+        keys = new long[left.length];
+    }
+
+    /**
+     * @param item the item to insert.
+     */
+    public void insert(long item) {
+        root = insert(item, root);
+    }
+
+    /**
+     * Remove from the tree. Nothing is done if item is not found.
+     * @param item the item to remove.
+     */
+    public void remove(long item) {
+        root = remove(item, root);
+    }
+
+    /**
+     * Find an item in the tree.
+     * @param item the item to search for.
+     * @return true if item is found.
+     */
+    public boolean contains(long item) {
+        int node = root;
+        while (node != NIL) {
+            int compareResult = Long.compare(item, keys[node]);
+
+            if (compareResult < 0)
+                node = left[node];
+            else if (compareResult > 0)
+                node = right[node];
+            else
+                return true;    // Match
+        }
+        return false;   // No match
+    }
+
+    /**
+     * Find the smallest item in the tree.
+     * @return smallest item.
+     */
+    public long findMin() {
+        return keys[leftmost()];
+    }
+
+    /**
+     * Find the largest item in the tree.
+     * @return the largest item.
+     */
+    public long findMax() {
+        return keys[rightmost()];
+    }
+
+    @Override
+    void growKeys(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+    }
+
+    @Override
+    void copyKey(int from, int to) {
+        keys[to] = keys[from];
+    }
+
+    /**
+     * Internal method to insert into a subtree. Duplicates are allowed.
+     * The arrays may grow, so a child is stored only after the call returns.
+     * @return the new root of the subtree.
+     */
+    private int insert(long item, int node) {
+        if (node == NIL) {
+            node = newNode();
+            keys[node] = item;
+            return node;
+        }
+
+        if (Long.compare(item, keys[node]) < 0) {
+            int child = insert(item, left[node]);
+            left[node] = child;
+        } else {
+            int child = insert(item, right[node]);
+            right[node] = child;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     * @return the new root of the subtree.
+     */
+    private int remove(long item, int node) {
+        if (node == NIL)
+            return node;   // Item not found; do nothing
+
+        int compareResult = Long.compare(item, keys[node]);
+
+        if (compareResult < 0)
+            left[node] = remove(item, left[node]);
+        else if (compareResult > 0)
+            right[node] = remove(item, right[node]);
+        else
+            return removeNode(node);
+        return balance(node);
+    }
+}
@@ -0,0 +1,496 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// MappedAVLTree class
+//
+// CONSTRUCTION: with MappedAVLTree.open( path )
+//
+// ******************PUBLIC OPERATIONS*********************
+// void insert( x )       --> Insert x
+// void remove( x )       --> Remove x
+// boolean contains( x )  --> Return true if x is present
+// long findMin( )        --> Return smallest item
+// long findMax( )        --> Return largest item
+// long size( )           --> Return number of items
+// boolean isEmpty( )     --> Return true if empty; else false
+// void force( )          --> Write changes through to the file
+// void close( )          --> Force and release the file
+// ******************ERRORS********************************
+// findMin and findMax throw RuntimeException on an empty tree
+// open throws IOException if the file is not a MappedAVLTree file
+
+/**
+ * AVL tree of long keys kept in a memory-mapped file instead of the heap.
+ * Other fixed-width keys can be stored by encoding them into a long.
+ * The file holds a header followed by fixed-size node records; a node is
+ * the int index of its record, and rotations rewrite the child indexes in
+ * place. Records are mapped in chunks of NODES_PER_CHUNK so the tree can grow
+ * past the 2GB limit of a single mapping. Reopening the file gives back the
+ * tree as it was, with no rebuilding, and lookups only read the mapping.
+ * This is IntAVLTree with its arrays replaced by the mapped records.
+ */
+public class MappedAVLTree implements AutoCloseable {
+    private static final int NIL = 0;
+    private static final int ALLOWED_IMBALANCE = 1;
+
+    // Header layout
+    private static final long MAGIC = 0x4156_4c4d_4150_0002L;   // "AVLMAP" and format version 2, big-endian
+    private static final int HEADER_BYTES = 64;
+    private static final int MAGIC_AT = 0;
+    private static final int ROOT_AT = 8;
+    private static final int FREE_AT = 12;
+    private static final int NEXT_AT = 16;
+    private static final int SIZE_AT = 20;
+
+    // Node record layout
+    private static final int RECORD_BYTES = 24;
+    private static final int KEY_AT = 0;
+    private static final int LEFT_AT = 8;
+    private static final int RIGHT_AT = 12;
+    private static final int HEIGHT_AT = 16;
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final int NODES_PER_CHUNK = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = NODES_PER_CHUNK - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private int root;
+    private int free;      // First record on the free list, chained through left
+    private int next;      // First record never used
+    private long size;
+
+    private MappedAVLTree(FileChannel channel) throws IOException {
+        this.channel = channel;
+        boolean created = channel.size() == 0;
+        if (!created)
+            checkMagic();   // Before mapping, which would grow a short file to the header size
+        header = map(0, HEADER_BYTES);
+        if (created) {
+            header.putLong(MAGIC_AT, MAGIC);
+            root = NIL;
+            free = NIL;
+            next = 1;
+            size = 0;
+            writeHeader();
+        } else {
+            root = header.getInt(ROOT_AT);
+            free = header.getInt(FREE_AT);
+            next = header.getInt(NEXT_AT);
+            size = header.getLong(SIZE_AT);
+        }
+        chunks = new MappedByteBuffer[0];
+        while ((long) chunks.length * NODES_PER_CHUNK < next)
+            addChunk();
+        setHeight(NIL, -1);
+    }
+
+    /**
+     * Open the tree stored in a file, creating an empty one if the file does not exist.
+     * @param path the file.
+     * @return the tree.
+     * @throws IOException if the file cannot be mapped or is not a tree file.
+     */
+    public static MappedAVLTree open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new MappedAVLTree(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param item the item to insert.
+     */
+    public void insert(long item) {
+        root = insert(item, root);
+        writeHeader();
+    }
+
+    /**
+     * Remove from the tree. Nothing is done if item is not found.
+     * @param item the item to remove.
+     */
+    public void remove(long item) {
+        root = remove(item, root);
+        writeHeader();
+    }
+
+    /**
+     * Find an item in the tree. Reads the mapping only; allocates nothing.
+     * @param item the item to search for.
+     * @return true if item is found.
+     */
+    public boolean contains(long item) {
+        int node = root;
+        while (node != NIL) {
+            int compareResult = Long.compare(item, key(node));
+
+            if (compareResult < 0)
+                node = left(node);
+            else if (compareResult > 0)
+                node = right(node);
+            else
+                return true;    // Match
+        }
+        return false;   // No match
+    }
+
+    /**
+     * Find the smallest item in the tree.
+     * @return smallest item.
+     */
+    public long findMin() {
+        if (isEmpty())
+            throw new RuntimeException();
+        int node = root;
+        while (left(node) != NIL)
+            node = left(node);
+        return key(node);
+    }
+
+    /**
+     * Find the largest item in the tree.
+     * @return the largest item.
+     */
+    public long findMax() {
+        if (isEmpty())
+            throw new RuntimeException();
+        int node = root;
+        while (right(node) != NIL)
+            node = right(node);
+        return key(node);
+    }
+
+    /**
+     * @return the number of items in the tree.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Test if the tree is logically empty.
+     * @return true if empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+    /**
+     * Write all changes through to the file.
+     */
+    public void force() {
+        header.force();
+        for (MappedByteBuffer chunk : chunks)
+            chunk.force();
+    }
+
+    /**
+     * Force the changes to the file and close it. The mapping is released
+     * once the tree is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    public void checkBalance() {
+        checkBalance(root);
+    }
+
+    private int checkBalance(int node) {
+        if (node == NIL)
+            return -1;
+
+        int hl = checkBalance(left(node));
+        int hr = checkBalance(right(node));
+        if (Math.abs(height(left(node)) - height(right(node))) > 1 ||
+                height(left(node)) != hl || height(right(node)) != hr)
+            System.out.println("\n\n***********************OOPS!!");
+
+        return height(node);
+    }
+
+    /**
+     * Read the magic number with a plain read, so a file that is not a tree is left unchanged.
+     * @throws IOException if the file is shorter than the header or the magic number does not match.
+     */
+    private void checkMagic() throws IOException {
+        if (channel.size() < HEADER_BYTES)
+            throw new IOException("Not a MappedAVLTree file: " + channel.size() + " bytes");
+        ByteBuffer magic = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        while (magic.hasRemaining())
+            if (channel.read(magic, MAGIC_AT + magic.position()) < 0)
+                throw new IOException("Not a MappedAVLTree file");
+        if (magic.getLong(0) != MAGIC)
+            throw new IOException("Not a MappedAVLTree file, or one of an older format");
+    }
+
+    /**
+     * Map part of the file. The file is always big-endian, whatever the machine,
+     * so it can be moved between machines.
+     */
+    private MappedByteBuffer map(long position, long bytes) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    private void addChunk() {
+        long position = HEADER_BYTES + (long) chunks.length * NODES_PER_CHUNK * RECORD_BYTES;
+        try {
+            MappedByteBuffer chunk = map(position, (long) NODES_PER_CHUNK * RECORD_BYTES);
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = chunk;
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader() {
+        header.putInt(ROOT_AT, root);
+        header.putInt(FREE_AT, free);
+        header.putInt(NEXT_AT, next);
+        header.putLong(SIZE_AT, size);
+    }
+
+    // Record accessors: node n is record n & CHUNK_MASK of chunk n >>> CHUNK_SHIFT
+    private static int at(int node, int field) {
+        return (node & CHUNK_MASK) * RECORD_BYTES + field;
+    }
+
+    private long key(int node) {
+        return chunks[node >>> CHUNK_SHIFT].getLong(at(node, KEY_AT));
+    }
+
+    private int left(int node) {
+        return chunks[node >>> CHUNK_SHIFT].getInt(at(node, LEFT_AT));
+    }
+
+    private int right(int node) {
+        return chunks[node >>> CHUNK_SHIFT].getInt(at(node, RIGHT_AT));
+    }
+
+    private int height(int node) {
+        return chunks[node >>> CHUNK_SHIFT].get(at(node, HEIGHT_AT));
+    }
+
+    private void setKey(int node, long key) {
+        chunks[node >>> CHUNK_SHIFT].putLong(at(node, KEY_AT), key);
+    }
+
+    private void setLeft(int node, int child) {
+        chunks[node >>> CHUNK_SHIFT].putInt(at(node, LEFT_AT), child);
+    }
+
+    private void setRight(int node, int child) {
+        chunks[node >>> CHUNK_SHIFT].putInt(at(node, RIGHT_AT), child);
+    }
+
+    private void setHeight(int node, int height) {
+        chunks[node >>> CHUNK_SHIFT].put(at(node, HEIGHT_AT), (byte) height);
+    }
+
+    /**
+     * Internal method to take a record for a new leaf, from the free list if it has one.
+     */
+    private int newNode(long item) {
+        int node = free;
+        if (node != NIL)
+            free = left(node);
+        else {
+            if (next == Integer.MAX_VALUE)
+                throw new IllegalStateException("Tree is full");
+            if (next == chunks.length * NODES_PER_CHUNK)
+                addChunk();
+            node = next++;
+        }
+        setLeft(node, NIL);
+        setRight(node, NIL);
+        setHeight(node, 0);
+        setKey(node, item);
+        size++;
+        return node;
+    }
+
+    /**
+     * Internal method to put a record on the free list.
+     */
+    private void freeNode(int node) {
+        setLeft(node, free);
+        free = node;
+        size--;
+    }
+
+    /**
+     * Internal method to insert into a subtree. Duplicates are allowed.
+     * @return the new root of the subtree.
+     */
+    private int insert(long item, int node) {
+        if (node == NIL)
+            return newNode(item);
+
+        if (Long.compare(item, key(node)) < 0)
+            setLeft(node, insert(item, left(node)));
+        else
+            setRight(node, insert(item, right(node)));
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     * @return the new root of the subtree.
+     */
+    private int remove(long item, int node) {
+        if (node == NIL)
+            return node;   // Item not found; do nothing
+
+        int compareResult = Long.compare(item, key(node));
+
+        if (compareResult < 0)
+            setLeft(node, remove(item, left(node)));
+        else if (compareResult > 0)
+            setRight(node, remove(item, right(node)));
+        else if (left(node) != NIL && right(node) != NIL) // Two children
+        {
+            int successor = right(node);
+            while (left(successor) != NIL)
+                successor = left(successor);
+            setKey(node, key(successor));
+            setRight(node, deleteMin(right(node)));
+        } else {
+            int child = (left(node) != NIL) ? left(node) : right(node);
+            freeNode(node);
+            return child;
+        }
+        return balance(node);
+    }
+
+    /**
+     * Internal method to remove the smallest node of a subtree.
+     * @return the new root of the subtree.
+     */
+    private int deleteMin(int node) {
+        if (left(node) == NIL) {
+            int child = right(node);
+            freeNode(node);
+            return child;
+        }
+        setLeft(node, deleteMin(left(node)));
+        return balance(node);
+    }
+
+    // Assume node is either balanced or within one of being balanced
+    private int balance(int node) {
+        if (height(left(node)) - height(right(node)) > ALLOWED_IMBALANCE)
+            if (height(left(left(node))) >= height(right(left(node))))
+                node = rightRotation(node);
+            else
+                node = doubleRightRotation(node);
+        else if (height(right(node)) - height(left(node)) > ALLOWED_IMBALANCE)
+            if (height(right(right(node))) >= height(left(right(node))))
+                node = leftRotation(node);
+            else
+                node = doubleLeftRotation(node);
+
+        update(node);
+        return node;
+    }
+
+    private void update(int node) {
+        setHeight(node, Math.max(height(left(node)), height(right(node))) + 1);
+    }
+
+    private int rightRotation(int node) {
+        int theLeft = left(node);
+        setLeft(node, right(theLeft));
+        setRight(theLeft, node);
+        update(node);
+        update(theLeft);
+        return theLeft;
+    }
+
+    private int leftRotation(int node) {
+        int theRight = right(node);
+        setRight(node, left(theRight));
+        setLeft(theRight, node);
+        update(node);
+        update(theRight);
+        return theRight;
+    }
+
+    private int doubleRightRotation(int node) {
+        setLeft(node, leftRotation(left(node)));
+        return rightRotation(node);
+    }
+
+    private int doubleLeftRotation(int node) {
+        setRight(node, rightRotation(right(node)));
+        return leftRotation(node);
+    }
+
+
+    // Test program: fill a tree in a temporary file, reopen it and check it
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("avl", ".map");
+        Files.delete(file);
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        java.util.Random random = new java.util.Random(11);
+        long[] keys = new long[n];
+        try (MappedAVLTree tree = MappedAVLTree.open(file)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                keys[i] = random.nextLong();
+                tree.insert(keys[i]);
+            }
+            System.out.println("inserted " + n + " keys in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+
+        long start = System.nanoTime();
+        try (MappedAVLTree tree = MappedAVLTree.open(file)) {
+            System.out.println("reopened " + tree.size() + " keys in " + (System.nanoTime() - start) / 1_000 + " us");
+            tree.checkBalance();
+            start = System.nanoTime();
+            int found = 0;
+            for (long key : keys)
+                if (tree.contains(key))
+                    found++;
+            System.out.println("found " + found + " keys, " + (System.nanoTime() - start) / n + " ns per lookup");
+            for (int i = 0; i < n; i += 2)
+                tree.remove(keys[i]);
+            tree.checkBalance();
+            for (int i = 0; i < n; i++)
+                if (tree.contains(keys[i]) != (i % 2 == 1))
+                    System.out.println("wrong after removing half: " + keys[i]);
+            System.out.println("size after removing half: " + tree.size());
+        }
+        System.out.println("file size " + Files.size(file) / (1 << 20) + " MB");
+        try (java.io.DataInputStream in = new java.io.DataInputStream(Files.newInputStream(file))) {
+            System.out.println("header is big-endian: " + (in.readLong() == MAGIC));
+        }
+        Files.delete(file);
+
+        // A file that is not a tree is refused, and left as it was
+        Path other = Files.createTempFile("avl", ".txt");
+        Files.writeString(other, "not a tree");
+        try (MappedAVLTree tree = MappedAVLTree.open(other)) {
+            System.out.println("WRONG: opened a text file as a tree of " + tree.size());
+        } catch (IOException e) {
+            System.out.println(e.getMessage() + "; file left at " + Files.size(other) + " bytes");
+        }
+        Files.delete(other);
+    }
+}
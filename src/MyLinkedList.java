@@ -1,8 +1,31 @@
-public class MyLinkedList<E> implements Queue<E> {
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class MyLinkedList<E> implements Queue<E>, Iterable<E> {
     private Node<E> front;
     private Node<E> rear;
+    private int size;
+    private final int capacity;
+
+    public MyLinkedList() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity most elements the list holds at once; adding past it throws IllegalStateException.
+     */
+    public MyLinkedList(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        this.capacity = capacity;
+    }
 
     public void addAtEnd(E data) {
+        if (size == capacity) {
+            throw new IllegalStateException("Queue full: capacity " + capacity);
+        }
         Node<E> newNode = new Node<>(data);
         if (front == null) {
             front = rear = newNode;
@@ -10,6 +33,7 @@ public class MyLinkedList<E> implements Queue<E> {
             rear.next = newNode;
             rear = rear.next;
         }
+        size++;
     }
 
     public E removeFromFront() {
@@ -19,6 +43,7 @@ public class MyLinkedList<E> implements Queue<E> {
 
         E data = front.data;
         front = front.next;
+        size--;
 
         if (front == null) {
             rear = null; // Queue is now empty
@@ -27,13 +52,29 @@ public class MyLinkedList<E> implements Queue<E> {
         return data;
     }
 
-    public void printContents() {
-        Node<E> current = front;
-        while (current != null) {
-            System.out.print(current.data + " ");
-            current = current.next;
-        }
-        System.out.println();
+    /**
+     * @return the elements front to rear; the list must not be changed while iterating.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private Node<E> current = front;
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public E next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                E data = current.data;
+                current = current.next;
+                return data;
+            }
+        };
     }
 
     @Override
@@ -45,6 +86,75 @@ public class MyLinkedList<E> implements Queue<E> {
     public void add(E data) {
         addAtEnd(data);
     }
+
+    /**
+     * Append every element of a collection in O(n): the new nodes are chained
+     * together first and linked after rear once.
+     */
+    @Override
+    public void addAll(Collection<? extends E> items) {
+        if (items.size() > capacity - size) {
+            throw new IllegalStateException("Queue full: " + items.size() + " elements for "
+                    + (capacity - size) + " places");
+        }
+        Node<E> first = null;
+        Node<E> last = null;
+        for (E item : items) {
+            Node<E> newNode = new Node<>(item);
+            if (first == null) {
+                first = newNode;
+            } else {
+                last.next = newNode;
+            }
+            last = newNode;
+        }
+        if (first == null) {
+            return;
+        }
+        if (front == null) {
+            front = first;
+        } else {
+            rear.next = first;
+        }
+        rear = last;
+        size += items.size();
+    }
+
+    /**
+     * Remove up to n elements from the front into a collection, unlinking them all at once.
+     */
+    @Override
+    public int drainTo(Collection<? super E> sink, int n) {
+        int moved = 0;
+        Node<E> current = front;
+        while (moved < n && current != null) {
+            sink.add(current.data);
+            current = current.next;
+            moved++;
+        }
+        front = current;
+        if (front == null) {
+            rear = null;
+        }
+        size -= moved;
+        return moved;
+    }
+
+    @Override
+    public E peek() {
+        return front == null ? null : front.data;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
     @Override
     public boolean isEmpty() {
         return front == null;
@@ -59,5 +169,56 @@ public class MyLinkedList<E> implements Queue<E> {
             this.next = null;
         }
     }
-}
 
+    // Test program: a bounded list pushes back when full, and keeps its
+    // order through addAll and drainTo
+    public static void main(String[] args) {
+        MyLinkedList<Integer> bounded = new MyLinkedList<>(3);
+        bounded.addAll(java.util.List.of(1, 2));
+        boolean ok = bounded.capacity() == 3 && bounded.remainingCapacity() == 1;
+        ok &= bounded.offer(3) && !bounded.offer(4) && bounded.remainingCapacity() == 0;
+        try {
+            bounded.add(4);
+            ok = false;
+        } catch (IllegalStateException e) {
+            ok &= bounded.size() == 3;
+        }
+        bounded.remove();
+        try {
+            bounded.addAll(java.util.List.of(5, 6));
+            ok = false;
+        } catch (IllegalStateException e) {
+            ok &= bounded.size() == 2;   // Nothing was added
+        }
+        System.out.println("bounded MyLinkedList pushes back when full: " + ok);
+
+        MyLinkedList<Integer> list = new MyLinkedList<>();
+        java.util.Random random = new java.util.Random(7);
+        java.util.List<Integer> added = new java.util.ArrayList<>();
+        java.util.List<Integer> taken = new java.util.ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            java.util.List<Integer> batch = new java.util.ArrayList<>();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                batch.add(random.nextInt(100));
+            }
+            list.addAll(batch);
+            added.addAll(batch);
+            if (i % 50 == 49) {
+                list.drainTo(taken, Integer.MAX_VALUE);   // Empty it, so rear must be reset
+            }
+        }
+        ok = list.size() == added.size() - taken.size();
+        int front = taken.size();
+        for (Integer x : list) {
+            ok &= x.equals(added.get(front++));
+        }
+        while (!list.isEmpty()) {
+            Integer next = list.peek();
+            ok &= next.equals(list.remove());
+            taken.add(next);
+            list.drainTo(taken, random.nextInt(10));
+        }
+        ok &= taken.equals(added) && list.peek() == null && list.size() == 0;
+        System.out.println("MyLinkedList keeps its order through addAll, peek and drainTo: " + ok);
+    }
+}
@@ -1,5 +1,67 @@
+import java.util.Collection;
+
 public interface Queue<E> {
     E remove();
     void add(E data);
     boolean isEmpty();
+
+    /**
+     * @return number of elements in the queue.
+     */
+    int size();
+
+    /**
+     * @return the element remove would return next, left in the queue, or null if empty.
+     */
+    E peek();
+
+    /**
+     * Add every element of a collection, in the collection's order.
+     * @throws IllegalStateException if they do not all fit; nothing is added then.
+     */
+    default void addAll(Collection<? extends E> items) {
+        if (items.size() > remainingCapacity())
+            throw new IllegalStateException("Queue full: " + items.size() + " elements for "
+                    + remainingCapacity() + " places");
+        for (E item : items)
+            add(item);
+    }
+
+    /**
+     * Remove up to n elements, in the order remove returns them, into a collection.
+     * @return number of elements moved.
+     */
+    default int drainTo(Collection<? super E> sink, int n) {
+        int moved = 0;
+        while (moved < n && !isEmpty()) {
+            sink.add(remove());
+            moved++;
+        }
+        return moved;
+    }
+
+    /**
+     * @return most elements the queue holds at once, Integer.MAX_VALUE if unbounded.
+     */
+    default int capacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return number of elements that can still be added before the queue is full.
+     */
+    default int remainingCapacity() {
+        return capacity() == Integer.MAX_VALUE ? Integer.MAX_VALUE : capacity() - size();
+    }
+
+    /**
+     * Add an element if there is room, so a producer can back off when the queue is full.
+     * @return true if it was added, false if the queue is full.
+     */
+    default boolean offer(E data) {
+        if (remainingCapacity() == 0)
+            return false;
+        add(data);
+        return true;
+    }
 }
@@ -0,0 +1,29 @@
+/**
+ * Work done by one ladder search, as counted and timed by LadderSolver over
+ * a LadderGraph, or by LadderGameSolution.findLadder.
+ * Both searches mark a word when they add it to the frontier, so no word is
+ * taken off twice and there are no stale entries to count.
+ */
+public class SearchStats {
+    public final int expanded;         // words taken off the frontier and expanded
+    public final int enqueued;         // words added to the frontier
+    public final int peakFrontier;     // most words on the frontier at once
+    public final int costCalls;        // calls of getCost, each comparing one word with the target letter by letter
+    public final long wallNanos;       // elapsed time of the search
+    public final long cpuNanos;        // CPU time of the searching thread, -1 if the JVM cannot measure it
+
+    public SearchStats(int expanded, int enqueued, int peakFrontier, int costCalls, long wallNanos, long cpuNanos) {
+        this.expanded = expanded;
+        this.enqueued = enqueued;
+        this.peakFrontier = peakFrontier;
+        this.costCalls = costCalls;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+    }
+
+    public String toString() {
+        return "expanded " + expanded + ", enqueued " + enqueued + ", peak frontier " + peakFrontier
+                + ", getCost " + costCalls + ", " + wallNanos / 1_000 + " us wall, "
+                + (cpuNanos < 0 ? "n/a" : cpuNanos / 1_000 + " us") + " CPU";
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded FIFO queue for handing elements from one thread to another without
+ * locks. Exactly one thread may add (add, offer, addAll) and exactly one
+ * thread may remove (remove, peek, drainTo); size and isEmpty may be called
+ * from anywhere but are only a snapshot.
+ * The elements sit in a ring whose length is a power of two. Each side owns
+ * one counter and publishes it with a release store, and remembers the last
+ * value it read of the other side's counter, so it only reads the shared one
+ * again when the ring looks full or empty.
+ */
+public class SpscQueue<E> implements Queue<E> {
+    private final Object[] ring;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();  // Count of elements removed; written by the consumer
+    private final AtomicLong tail = new AtomicLong();  // Count of elements added; written by the producer
+    private long headSeen;  // Producer's last read of head
+    private long tailSeen;  // Consumer's last read of tail
+
+    /**
+     * @param capacity most elements the queue holds at once, rounded up to a power of two.
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity " + capacity);
+        }
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        ring = new Object[length];
+        mask = length - 1;
+    }
+
+    /**
+     * @throws IllegalStateException if the queue is full.
+     */
+    @Override
+    public void add(E data) {
+        if (!offer(data)) {
+            throw new IllegalStateException("Queue full: capacity " + ring.length);
+        }
+    }
+
+    @Override
+    public boolean offer(E data) {
+        long t = tail.get();
+        if (t - headSeen == ring.length) {
+            headSeen = head.get();
+            if (t - headSeen == ring.length) {
+                return false;
+            }
+        }
+        ring[(int) t & mask] = data;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    @Override
+    public E remove() {
+        long h = head.get();
+        if (h == tailSeen) {
+            tailSeen = tail.get();
+            if (h == tailSeen) {
+                return null; // Queue is empty
+            }
+        }
+        int slot = (int) h & mask;
+        @SuppressWarnings("unchecked")
+        E data = (E) ring[slot];
+        ring[slot] = null;
+        head.lazySet(h + 1);
+        return data;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long h = head.get();
+        if (h == tailSeen) {
+            tailSeen = tail.get();
+            if (h == tailSeen) {
+                return null;
+            }
+        }
+        return (E) ring[(int) h & mask];
+    }
+
+    @Override
+    public int size() {
+        // Read head first: it only grows, so the difference is never negative
+        long h = head.get();
+        return (int) Math.min(tail.get() - h, ring.length);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int capacity() {
+        return ring.length;
+    }
+
+    // Test program: one thread passes numbers to another through a small
+    // ring, in single adds and in batches, and the consumer checks it gets
+    // every number once and in order, through remove, peek and drainTo.
+    public static void main(String[] args) throws InterruptedException {
+        SpscQueue<Integer> full = new SpscQueue<>(5);
+        boolean ok = full.capacity() == 8;
+        for (int i = 0; i < 8; i++)
+            ok &= full.offer(i);
+        ok &= !full.offer(8) && full.size() == 8 && full.peek() == 0;
+        System.out.println("SpscQueue rounds its capacity up and refuses when full: " + ok);
+
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SpscQueue<Integer> queue = new SpscQueue<>(64);
+        Thread producer = new Thread(() -> {
+            java.util.List<Integer> batch = new java.util.ArrayList<>();
+            int next = 0;
+            while (next < n) {
+                if (next % 7 == 0) {
+                    batch.clear();
+                    for (int i = next; i < Math.min(next + 10, n); i++)
+                        batch.add(i);
+                    while (batch.size() > queue.remainingCapacity())
+                        Thread.yield();
+                    queue.addAll(batch);
+                    next += batch.size();
+                } else {
+                    while (!queue.offer(next))
+                        Thread.yield();
+                    next++;
+                }
+            }
+        });
+        producer.start();
+        java.util.List<Integer> taken = new java.util.ArrayList<>();
+        long expected = 0;
+        int spins = 0;
+        while (expected < n) {
+            Integer x = (expected & 1) == 0 ? queue.remove() : queue.peek();
+            if (x == null) {
+                spins++;
+                Thread.yield();
+                continue;
+            }
+            if ((expected & 1) != 0)
+                ok &= x.equals(queue.remove());   // Only this thread removes, so peek saw the head
+            ok &= x == expected++;
+            taken.clear();
+            queue.drainTo(taken, 5);
+            for (Integer y : taken)
+                ok &= y == expected++;
+        }
+        producer.join();
+        ok &= expected == n && queue.isEmpty() && queue.remove() == null;
+        System.out.println("SpscQueue passed " + n + " numbers between two threads "
+                + (ok ? "in order" : "OUT OF ORDER OR LOST") + " (" + spins + " empty polls)");
+    }
+}